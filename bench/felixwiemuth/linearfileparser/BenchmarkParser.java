@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * The reference grammar used by the benchmarks. It is modeled on
+ * {@code TestParser3} (same prefixes and sections) and adds a few named keys.
+ * Instead of printing, processors add up the lengths of their arguments so
+ * that the work cannot be optimized away. Keep this grammar unchanged to
+ * compare results across versions.
+ *
+ * @author Felix Wiemuth
+ */
+public class BenchmarkParser extends LinearFileParser {
+
+    private long checksum;
+
+    public BenchmarkParser() {
+        super("//", ">>", "@sec ", "0", true);
+
+        // sections
+        addSection("1", null, null);
+        addSection("2", null, null);
+        addSection("3", null, null);
+        addSection("0");
+
+        // global keys
+        addKeyProcessor(new KeyProcessor("?") {
+            @Override
+            public void process(String arg, ListIterator<String> it) throws ParseException {
+                checksum++;
+            }
+        });
+        addKeyProcessor(new ArgKeyProcessor("row") {
+            @Override
+            public void _process(String arg, ListIterator<String> it) throws ParseException {
+                checksum += arg.length();
+            }
+        });
+        addKeyProcessor(new ArgKeyProcessor("name") {
+            @Override
+            public void _process(String arg, ListIterator<String> it) throws ParseException {
+                checksum += arg.hashCode();
+            }
+        });
+        setDefaultProcessor(new DefaultProcessor() {
+            @Override
+            public boolean run(String line, ListIterator<String> it) throws IllegalLineException, ParseException {
+                checksum += line.length();
+                return true;
+            }
+        });
+
+        // local keys
+        for (String section : new String[]{"0", "1", "2", "3"}) {
+            addKeyProcessor(section, new KeyProcessor("") {
+                @Override
+                public void process(String arg, ListIterator<String> it) throws ParseException {
+                    if (arg != null) {
+                        checksum += arg.length();
+                    }
+                }
+            });
+        }
+    }
+
+    public long parse(List<String> lines) throws ParseException {
+        checksum = 0;
+        _parse(lines);
+        return checksum;
+    }
+
+    public long parse(InputStream inputStream) throws IOException, ParseException {
+        checksum = 0;
+        _parse(inputStream);
+        return checksum;
+    }
+
+    public long parse(File file) throws IOException, ParseException {
+        checksum = 0;
+        _parse(file);
+        return checksum;
+    }
+
+    public long parseStream(InputStream inputStream) throws IOException, ParseException {
+        checksum = 0;
+        _parseStream(inputStream);
+        return checksum;
+    }
+
+    public long parseMapped(File file) throws IOException, ParseException {
+        checksum = 0;
+        _parseMapped(file);
+        return checksum;
+    }
+}
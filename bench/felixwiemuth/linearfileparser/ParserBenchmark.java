@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the different ways to provide input to
+ * {@link LinearFileParser}, using {@link BenchmarkParser} on the generated
+ * {@link Workload}s. Besides the throughput of whole parses, the number of
+ * lines parsed per second is reported as the secondary result "lines".
+ * Allocation rates are obtained by running with the GC profiler
+ * ({@code -prof gc}).
+ *
+ * The input size is given as parameter "size" (e.g. {@code -p size=1GB}). The
+ * benchmarks on lists keep the whole input in memory, so large sizes require a
+ * correspondingly large heap.
+ *
+ * @author Felix Wiemuth
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"COMMENT_HEAVY", "KEY_HEAVY", "SECTION_SWITCH_HEAVY", "DEFAULT_PROCESSOR_HEAVY", "LONG_ARGUMENTS"})
+        public Workload workload;
+
+        @Param({"1KB", "1MB", "64MB"})
+        public String size;
+    }
+
+    @State(Scope.Benchmark)
+    public static class ListInput {
+
+        List<String> lines;
+
+        @Setup(Level.Trial)
+        public void setUp(Input input) {
+            lines = input.workload.generate(Workload.parseSize(input.size));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FileInput {
+
+        File file;
+        int lines;
+
+        @Setup(Level.Trial)
+        public void setUp(Input input) throws IOException {
+            file = File.createTempFile("linearfileparser-" + input.workload, ".txt");
+            file.deleteOnExit();
+            lines = input.workload.write(Workload.parseSize(input.size), file);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Parser {
+
+        BenchmarkParser parser;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            parser = new BenchmarkParser();
+        }
+    }
+
+    /**
+     * Counts the parsed lines, reported per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Lines {
+
+        public long lines;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lines = 0;
+        }
+    }
+
+    @Benchmark
+    public long parseList(Parser parser, ListInput input, Lines lines) throws ParseException {
+        lines.lines += input.lines.size();
+        return parser.parser.parse(input.lines);
+    }
+
+    @Benchmark
+    public long parseInputStream(Parser parser, FileInput input, Lines lines) throws IOException, ParseException {
+        lines.lines += input.lines;
+        return parser.parser.parse(new BufferedInputStream(new FileInputStream(input.file)));
+    }
+
+    @Benchmark
+    public long parseFile(Parser parser, FileInput input, Lines lines) throws IOException, ParseException {
+        lines.lines += input.lines;
+        return parser.parser.parse(input.file);
+    }
+
+    @Benchmark
+    public long parseStream(Parser parser, FileInput input, Lines lines) throws IOException, ParseException {
+        lines.lines += input.lines;
+        return parser.parser.parseStream(new FileInputStream(input.file));
+    }
+
+    @Benchmark
+    public long parseMapped(Parser parser, FileInput input, Lines lines) throws IOException, ParseException {
+        lines.lines += input.lines;
+        return parser.parser.parseMapped(input.file);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated inputs for {@link BenchmarkParser}. Every workload produces a
+ * deterministic sequence of lines dominated by one kind of line.
+ *
+ * @author Felix Wiemuth
+ */
+public enum Workload {
+
+    /**
+     * Mostly comments, some keys.
+     */
+    COMMENT_HEAVY {
+        @Override
+        String line(int i, Random random) {
+            return i % 10 == 0 ? ">> row " + word(random) : "// comment " + i + " " + word(random);
+        }
+    },
+    /**
+     * Only keys with short arguments.
+     */
+    KEY_HEAVY {
+        @Override
+        String line(int i, Random random) {
+            switch (i % 4) {
+                case 0:
+                    return ">>row " + random.nextInt(1000000);
+                case 1:
+                    return ">>name " + word(random);
+                case 2:
+                    return ">> " + word(random);
+                default:
+                    return ">>?";
+            }
+        }
+    },
+    /**
+     * Every second line switches the section.
+     */
+    SECTION_SWITCH_HEAVY {
+        @Override
+        String line(int i, Random random) {
+            return i % 2 == 0 ? "@sec " + (i / 2) % 4 : ">> " + word(random);
+        }
+    },
+    /**
+     * Lines without prefix, handled by the default processor.
+     */
+    DEFAULT_PROCESSOR_HEAVY {
+        @Override
+        String line(int i, Random random) {
+            return word(random) + " " + word(random) + " " + i;
+        }
+    },
+    /**
+     * Keys with arguments of several kilobytes.
+     */
+    LONG_ARGUMENTS {
+        @Override
+        String line(int i, Random random) {
+            StringBuilder sb = new StringBuilder(">>row ");
+            int length = 1000 + random.nextInt(4000);
+            while (sb.length() < length) {
+                sb.append(word(random)).append(' ');
+            }
+            return sb.toString();
+        }
+    };
+
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta"};
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    /**
+     * Generate the line with the given index.
+     */
+    abstract String line(int i, Random random);
+
+    /**
+     * Generate lines with a total size of about the given number of bytes
+     * (counting one byte per character and line terminator).
+     *
+     * @param bytes
+     * @return
+     */
+    public List<String> generate(long bytes) {
+        List<String> lines = new ArrayList<>();
+        Random random = new Random(42);
+        long size = 0;
+        for (int i = 0; size < bytes; i++) {
+            String line = line(i, random);
+            lines.add(line);
+            size += line.length() + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * Write the lines of {@link #generate(long)} to a file (without keeping
+     * them in memory).
+     *
+     * @param bytes
+     * @param file
+     * @return the number of lines written
+     * @throws IOException
+     */
+    public int write(long bytes, File file) throws IOException {
+        Random random = new Random(42);
+        long size = 0;
+        int i = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for (; size < bytes; i++) {
+                String line = line(i, random);
+                writer.write(line);
+                writer.write('\n');
+                size += line.length() + 1;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Parse a size like "1KB", "64MB" or "1GB" (powers of 1024).
+     *
+     * @param size
+     * @return the size in bytes
+     */
+    public static long parseSize(String size) {
+        String s = size.trim().toUpperCase();
+        long factor = 1;
+        if (s.endsWith("KB")) {
+            factor = 1L << 10;
+        } else if (s.endsWith("MB")) {
+            factor = 1L << 20;
+        } else if (s.endsWith("GB")) {
+            factor = 1L << 30;
+        }
+        if (factor != 1) {
+            s = s.substring(0, s.length() - 2);
+        }
+        return Long.parseLong(s.trim()) * factor;
+    }
+}
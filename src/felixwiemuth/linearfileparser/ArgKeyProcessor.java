@@ -50,7 +50,7 @@ public abstract class ArgKeyProcessor extends LinearFileParser.KeyProcessor {
     @Override
     public void process(String arg, ListIterator<String> it) throws MissingArgumentException, ParseException {
         if (arg == null) {
-            throw new MissingArgumentException(it.nextIndex(), key);
+            throw new MissingArgumentException(it.nextIndex(), key, recordStackTraces());
         }
         _process(arg, it);
     }
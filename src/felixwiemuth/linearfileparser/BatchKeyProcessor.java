@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.ListIterator;
+
+/**
+ * A key processor receiving the arguments of consecutive lines with its key
+ * in chunks instead of one call per line, e.g. to insert them into a database
+ * in bulk. The parser collects the arguments in a buffer it reuses for all
+ * chunks and passes them to
+ * {@link #process(String[], int[], int, ListIterator)} when the chunk is
+ * full, when a line is processed by another processor or the default
+ * processor, when the section changes and at the end of the input (or of the
+ * lines parsed). Comments and empty lines do not interrupt a chunk.
+ *
+ * @author Felix Wiemuth
+ */
+public abstract class BatchKeyProcessor extends LinearFileParser.KeyProcessor {
+
+    private final int chunkSize;
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param chunkSize the maximum number of arguments passed in one call
+     */
+    public BatchKeyProcessor(String key, int chunkSize) {
+        super(key);
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Batch processors are called by the parser with chunks of arguments, see
+     * {@link #process(String[], int[], int, ListIterator)}.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public final void process(String arg, ListIterator<String> it) throws ParseException {
+        throw new UnsupportedOperationException("Batch processors can only be called by the parser.");
+    }
+
+    /**
+     * Process a chunk of arguments. The arrays are reused by the parser and
+     * only valid during this call.
+     *
+     * @param args the arguments given with the key (an element is null if the
+     * line ends after the key), valid from index 0 to count - 1
+     * @param lines the numbers of the lines of the arguments
+     * @param count the number of arguments in the chunk
+     * @param it iterator over the list of lines, pointing to the line after
+     * the last line read - it should not be moved
+     * @throws ParseException (when collecting errors, a line interrupting the
+     * chunk is processed nevertheless)
+     */
+    public abstract void process(String[] args, int[] lines, int count, ListIterator<String> it) throws ParseException;
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses many files concurrently on an {@link ExecutorService}. Every file is
+ * parsed by a {@link FileParser}, which typically creates a new instance of a
+ * {@link LinearFileParser} subclass sharing the definition of a prototype
+ * (see {@link LinearFileParser#LinearFileParser(LinearFileParser)}) and
+ * returns its result. Failing files do not abort the batch: the outcome of
+ * every file is reported as a {@link Result}.
+ *
+ * @author Felix Wiemuth
+ * @param <R> the type of the result of parsing a single file
+ */
+public class BatchParser<R> {
+
+    /**
+     * Parses a single file.
+     *
+     * @param <R> the type of the result
+     */
+    public interface FileParser<R> {
+
+        /**
+         * Parse a file. This method is called concurrently for different
+         * files.
+         *
+         * @param file
+         * @return the result of parsing the file
+         * @throws IOException
+         * @throws ParseException
+         */
+        R parse(Path file) throws IOException, ParseException;
+    }
+
+    /**
+     * The outcome of parsing a single file: either a value or the exception
+     * that occurred.
+     *
+     * @param <R> the type of the result
+     */
+    public static final class Result<R> {
+
+        private final Path file;
+        private final R value;
+        private final Exception exception;
+
+        private Result(Path file, R value, Exception exception) {
+            this.file = file;
+            this.value = value;
+            this.exception = exception;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         *
+         * @return whether the file was parsed without exception
+         */
+        public boolean isSuccess() {
+            return exception == null;
+        }
+
+        /**
+         *
+         * @return the value returned by {@link FileParser#parse(Path)} or null
+         * if parsing failed
+         */
+        public R getValue() {
+            return value;
+        }
+
+        /**
+         *
+         * @return the exception that occurred while parsing the file
+         * ({@link ParseException}, {@link IOException} or an unchecked
+         * exception) or null if parsing succeeded
+         */
+        public Exception getException() {
+            return exception;
+        }
+
+        /**
+         *
+         * @return the exception if it is a {@link ParseException}, otherwise
+         * null
+         */
+        public ParseException getParseException() {
+            return exception instanceof ParseException ? (ParseException) exception : null;
+        }
+    }
+
+    private final FileParser<R> fileParser;
+    private final ExecutorService executor;
+
+    /**
+     *
+     * @param fileParser parses a single file
+     * @param executor the executor to run the parsing tasks on (e.g. a fixed
+     * thread pool or an executor using virtual threads); it is not shut down by
+     * this class
+     */
+    public BatchParser(FileParser<R> fileParser, ExecutorService executor) {
+        this.fileParser = fileParser;
+        this.executor = executor;
+    }
+
+    /**
+     * Parse the given files concurrently and wait until all are finished.
+     *
+     * @param files
+     * @return the results in the order of the given files
+     * @throws InterruptedException if interrupted while waiting, in which case
+     * unfinished tasks are cancelled
+     */
+    public List<Result<R>> parse(Collection<Path> files) throws InterruptedException {
+        List<Callable<Result<R>>> tasks = new ArrayList<>(files.size());
+        for (final Path file : files) {
+            tasks.add(new Callable<Result<R>>() {
+                @Override
+                public Result<R> call() {
+                    try {
+                        return new Result<>(file, fileParser.parse(file), null);
+                    } catch (IOException | ParseException | RuntimeException ex) {
+                        return new Result<>(file, null, ex);
+                    }
+                }
+            });
+        }
+        List<Result<R>> results = new ArrayList<>(files.size());
+        for (Future<Result<R>> future : executor.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException ex) { // tasks catch all exceptions, so this should be an Error
+                if (ex.getCause() instanceof Error) {
+                    throw (Error) ex.getCause();
+                }
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Parse all files in a directory (not including subdirectories) whose name
+     * matches a glob pattern (see
+     * {@link java.nio.file.FileSystem#getPathMatcher(String)}).
+     *
+     * @param directory
+     * @param glob a glob pattern like "*.txt"
+     * @return the results, ordered as the directory listing
+     * @throws IOException if the directory cannot be listed
+     * @throws InterruptedException
+     */
+    public List<Result<R>> parse(Path directory, String glob) throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        return parse(files);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * A key processor receiving a whole multi-line block in a single call. The
+ * block consists of the lines following the line with the key, up to a
+ * boundary determined by the {@link Terminator} of the processor. The parser
+ * locates the boundary with its line classifier, collects the lines of the
+ * block and passes them to
+ * {@link #process(String, int, List, ListIterator)}, so processors do not have
+ * to walk the iterator and check prefixes themselves. The list of lines is
+ * not shared with the parser and can be handed off to another thread.
+ *
+ * A line starting with the section prefix always ends a block (and is not
+ * part of it), so blocks never span sections.
+ *
+ * @author Felix Wiemuth
+ */
+public abstract class BlockKeyProcessor extends LinearFileParser.KeyProcessor {
+
+    /**
+     * Determines where a block ends.
+     */
+    public enum Terminator {
+        /**
+         * The block ends before the next line starting with the key prefix.
+         */
+        NEXT_KEY,
+        /**
+         * The block ends with the next blank line, which is not part of the
+         * block.
+         */
+        BLANK_LINE,
+        /**
+         * The block ends with the next line equal to the end marker, which is
+         * not part of the block. If there is no such line,
+         * {@link UnterminatedBlockException} is thrown.
+         */
+        END_MARKER,
+        /**
+         * The block consists of the following lines starting with a space or
+         * tab and ends before the first line which does not (including empty
+         * lines).
+         */
+        INDENTATION
+    }
+
+    private final Terminator terminator;
+    private final String endMarker;
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param oneShot whether this key may only be used once in the section of
+     * this processor - when used a second time, {@link RepeatedKeyException} is
+     * thrown
+     * @param terminator determines where a block ends (use
+     * {@link #BlockKeyProcessor(String, boolean, String)} for
+     * {@link Terminator#END_MARKER})
+     */
+    public BlockKeyProcessor(String key, boolean oneShot, Terminator terminator) {
+        super(key, oneShot);
+        if (terminator == Terminator.END_MARKER) {
+            throw new IllegalArgumentException("An end marker has to be specified.");
+        }
+        this.terminator = terminator;
+        this.endMarker = null;
+    }
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param terminator determines where a block ends
+     */
+    public BlockKeyProcessor(String key, Terminator terminator) {
+        this(key, false, terminator);
+    }
+
+    /**
+     * Create a processor for blocks ending with an end marker.
+     *
+     * @param key the key to be processed
+     * @param oneShot whether this key may only be used once in the section of
+     * this processor - when used a second time, {@link RepeatedKeyException} is
+     * thrown
+     * @param endMarker the line ending a block
+     */
+    public BlockKeyProcessor(String key, boolean oneShot, String endMarker) {
+        super(key, oneShot);
+        if (endMarker == null) {
+            throw new NullPointerException();
+        }
+        this.terminator = Terminator.END_MARKER;
+        this.endMarker = endMarker;
+    }
+
+    public Terminator getTerminator() {
+        return terminator;
+    }
+
+    /**
+     *
+     * @return the end marker or null if the terminator is not
+     * {@link Terminator#END_MARKER}
+     */
+    public String getEndMarker() {
+        return endMarker;
+    }
+
+    /**
+     * Block processors are called by the parser with the whole block, see
+     * {@link #process(String, int, List, ListIterator)}.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public final void process(String arg, ListIterator<String> it) throws ParseException {
+        throw new UnsupportedOperationException("Block processors can only be called by the parser.");
+    }
+
+    /**
+     * Process the key at the current line together with its block.
+     *
+     * @param arg the argument given with the key or null if the line ends
+     * after the key
+     * @param firstLine the number of the first line of the block (the line
+     * after the key)
+     * @param lines the lines of the block (may be empty)
+     * @param it iterator over the list of lines, pointing to the line after the
+     * block (and after the end marker or blank line ending it)
+     * @throws ParseException
+     */
+    public abstract void process(String arg, int firstLine, List<String> lines, ListIterator<String> it) throws ParseException;
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.ListIterator;
+
+/**
+ * A key processor requiring "true" or "false" (ignoring case) as argument.
+ * A missing argument causes {@link MissingArgumentException}, any other
+ * argument {@link IllegalArgumentFormatException}.
+ *
+ * @author Felix Wiemuth
+ */
+public abstract class BooleanKeyProcessor extends LineKeyProcessor {
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param oneShot whether this key may only be used once in the section of
+     * this processor - when used a second time, {@link RepeatedKeyException} is
+     * thrown
+     */
+    public BooleanKeyProcessor(String key, boolean oneShot) {
+        super(key, oneShot);
+    }
+
+    /**
+     *
+     * @param key the key to be processed
+     */
+    public BooleanKeyProcessor(String key) {
+        super(key);
+    }
+
+    @Override
+    public final void process(CharSequence line, int argStart, int argEnd, ListIterator<String> it) throws ParseException {
+        process(decodeBoolean(line, argStart, argEnd, it), it);
+    }
+
+    /**
+     * Process the key at the current line.
+     *
+     * @param value the decoded argument
+     * @param it iterator over the list of lines, pointing to the line after the
+     * current - the iterator can be used to modify the list or the current
+     * position and the parser will continue with this same iterator
+     * @throws ParseException
+     */
+    public abstract void process(boolean value, ListIterator<String> it) throws ParseException;
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The state of a parse between two lines, from which the parse can be resumed
+ * (see {@link LinearFileParser#_resume(java.io.File, java.nio.charset.Charset, Checkpoint)}).
+ * It consists of the byte offset and index of the next line, the current
+ * section, the lines where one-shot keys were used and an opaque state of the
+ * parser subclass (see {@link LinearFileParser#getCheckpointState()}).
+ * Checkpoints are created periodically while parsing a file (see
+ * {@link LinearFileParser#setCheckpoints(Handler, int, long)}) and can be
+ * stored with {@link #write(DataOutput)}.
+ *
+ * A checkpoint can only be used with a parser of the same definition and the
+ * same file.
+ *
+ * @author Felix Wiemuth
+ */
+public final class Checkpoint {
+
+    /**
+     * Receives the checkpoints of a parse.
+     */
+    public interface Handler {
+
+        /**
+         * Called by the parsing thread between two lines.
+         *
+         * @param checkpoint
+         */
+        void checkpoint(Checkpoint checkpoint);
+    }
+
+    private static final int MAGIC = 0x4c46434b; // "LFCK"
+    private static final int FORMAT = 1;
+
+    private final long offset;
+    private final int line;
+    private final String sectionID;
+    private final int[] oneShotLines;
+    private final byte[] state;
+
+    Checkpoint(long offset, int line, String sectionID, int[] oneShotLines, byte[] state) {
+        this.offset = offset;
+        this.line = line;
+        this.sectionID = sectionID;
+        this.oneShotLines = oneShotLines;
+        this.state = state;
+    }
+
+    /**
+     *
+     * @return the byte offset of the next line in the file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     *
+     * @return the index of the next line (the number of lines processed)
+     */
+    public int getLine() {
+        return line;
+    }
+
+    public String getSectionID() {
+        return sectionID;
+    }
+
+    int[] getOneShotLines() {
+        return oneShotLines;
+    }
+
+    /**
+     *
+     * @return the state returned by
+     * {@link LinearFileParser#getCheckpointState()} (may be null)
+     */
+    public byte[] getState() {
+        return state == null ? null : state.clone();
+    }
+
+    /**
+     * Write this checkpoint to an output.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeLong(offset);
+        out.writeInt(line);
+        out.writeUTF(sectionID);
+        out.writeInt(oneShotLines.length);
+        for (int oneShotLine : oneShotLines) {
+            out.writeInt(oneShotLine);
+        }
+        out.writeInt(state == null ? -1 : state.length);
+        if (state != null) {
+            out.write(state);
+        }
+    }
+
+    /**
+     * Read a checkpoint written by {@link #write(DataOutput)}.
+     *
+     * @param in
+     * @return
+     * @throws IOException also if the input is not a checkpoint
+     */
+    public static Checkpoint read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+            throw new IOException("Not a checkpoint or unsupported format.");
+        }
+        long offset = in.readLong();
+        int line = in.readInt();
+        String sectionID = in.readUTF();
+        int[] oneShotLines = new int[in.readInt()];
+        for (int i = 0; i < oneShotLines.length; i++) {
+            oneShotLines[i] = in.readInt();
+        }
+        int length = in.readInt();
+        byte[] state = null;
+        if (length >= 0) {
+            state = new byte[length];
+            in.readFully(state);
+        }
+        return new Checkpoint(offset, line, sectionID, oneShotLines, state);
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint at line " + line + " (offset " + offset + ") in section \"" + sectionID + "\", one-shot keys: " + Arrays.toString(oneShotLines);
+    }
+}
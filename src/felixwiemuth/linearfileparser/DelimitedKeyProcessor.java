@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.ListIterator;
+
+/**
+ * A key processor requiring an argument which is a list of elements separated
+ * by a delimiter character (like "1, 2, 3"). The elements are passed one by
+ * one as ranges of the line, with spaces and tabs around them removed, so they
+ * can be decoded without creating substrings (e.g. with
+ * {@link #decodeLong(CharSequence, int, int, long, long, ListIterator)}). A
+ * missing argument causes {@link MissingArgumentException}, an empty element
+ * {@link IllegalArgumentFormatException}.
+ *
+ * @author Felix Wiemuth
+ */
+public abstract class DelimitedKeyProcessor extends LineKeyProcessor {
+
+    private final char delimiter;
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param oneShot whether this key may only be used once in the section of
+     * this processor - when used a second time, {@link RepeatedKeyException} is
+     * thrown
+     * @param delimiter the character separating the elements
+     */
+    public DelimitedKeyProcessor(String key, boolean oneShot, char delimiter) {
+        super(key, oneShot);
+        this.delimiter = delimiter;
+    }
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param delimiter the character separating the elements
+     */
+    public DelimitedKeyProcessor(String key, char delimiter) {
+        this(key, false, delimiter);
+    }
+
+    @Override
+    public final void process(CharSequence line, int argStart, int argEnd, ListIterator<String> it) throws ParseException {
+        if (trimStart(line, argStart, argEnd) == argEnd) {
+            throw new MissingArgumentException(it.nextIndex(), key, recordStackTraces());
+        }
+        int index = 0;
+        int elementStart = argStart;
+        for (int i = argStart; i <= argEnd; i++) {
+            if (i == argEnd || line.charAt(i) == delimiter) {
+                int start = trimStart(line, elementStart, i);
+                int end = trimEnd(line, start, i);
+                if (start == end) {
+                    throw illegalArgument(line, trimStart(line, argStart, argEnd), trimEnd(line, argStart, argEnd), it);
+                }
+                processElement(line, start, end, index++, it);
+                elementStart = i + 1;
+            }
+        }
+        processEnd(index, it);
+    }
+
+    /**
+     * Process an element of the list given with the key at the current line.
+     *
+     * @param line the current line
+     * @param start index of the first character of the element in line
+     * @param end index after the last character of the element in line
+     * @param index the position of the element in the list
+     * @param it iterator over the list of lines, pointing to the line after the
+     * current - it should not be moved before the last element was processed
+     * @throws ParseException
+     */
+    public abstract void processElement(CharSequence line, int start, int end, int index, ListIterator<String> it) throws ParseException;
+
+    /**
+     * Called after the last element of the list was processed. Does nothing
+     * by default.
+     *
+     * @param count the number of elements in the list
+     * @param it iterator over the list of lines, pointing to the line after the
+     * current - the iterator can be used to modify the list or the current
+     * position and the parser will continue with this same iterator
+     * @throws ParseException
+     */
+    public void processEnd(int count, ListIterator<String> it) throws ParseException {
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.ListIterator;
+
+/**
+ * A key processor requiring the name of a constant of an enum type as
+ * argument. The argument is matched against the names of the constants
+ * (optionally ignoring case) directly on the line, without creating a
+ * substring. A missing argument causes {@link MissingArgumentException}, an
+ * argument which names no constant {@link IllegalArgumentFormatException}.
+ *
+ * @author Felix Wiemuth
+ * @param <E> the enum type
+ */
+public abstract class EnumKeyProcessor<E extends Enum<E>> extends LineKeyProcessor {
+
+    private final E[] constants;
+    private final boolean ignoreCase;
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param oneShot whether this key may only be used once in the section of
+     * this processor - when used a second time, {@link RepeatedKeyException} is
+     * thrown
+     * @param type the enum type
+     * @param ignoreCase whether to ignore case when matching the names of the
+     * constants
+     */
+    public EnumKeyProcessor(String key, boolean oneShot, Class<E> type, boolean ignoreCase) {
+        super(key, oneShot);
+        this.constants = type.getEnumConstants();
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param type the enum type
+     */
+    public EnumKeyProcessor(String key, Class<E> type) {
+        this(key, false, type, false);
+    }
+
+    @Override
+    public final void process(CharSequence line, int argStart, int argEnd, ListIterator<String> it) throws ParseException {
+        int start = trimStart(line, argStart, argEnd);
+        int end = trimEnd(line, start, argEnd);
+        if (start == end) {
+            throw new MissingArgumentException(it.nextIndex(), key, recordStackTraces());
+        }
+        for (E constant : constants) {
+            if (ignoreCase ? regionEqualsIgnoreCase(line, start, end, constant.name()) : regionEquals(line, start, end, constant.name())) {
+                process(constant, it);
+                return;
+            }
+        }
+        throw illegalArgument(line, start, end, it);
+    }
+
+    /**
+     * Process the key at the current line.
+     *
+     * @param value the constant named by the argument
+     * @param it iterator over the list of lines, pointing to the line after the
+     * current - the iterator can be used to modify the list or the current
+     * position and the parser will continue with this same iterator
+     * @throws ParseException
+     */
+    public abstract void process(E value, ListIterator<String> it) throws ParseException;
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * A {@link StreamLineIterator} following a file which is continuously
+ * appended to, like "tail -f". After reaching the end of the file, it polls
+ * for appended data, starting with a delay of one millisecond which is
+ * doubled while no data arrives up to a maximum delay. Only complete lines
+ * (terminated by '\n', '\r' or "\r\n") are returned, so a line which is being
+ * written is not returned before its end.
+ *
+ * If the file becomes shorter than the position read up to, it is assumed to
+ * have been truncated and is read again from the beginning. If the path
+ * refers to a different file than the one opened (determined by
+ * {@link BasicFileAttributes#fileKey()} where supported), the file is assumed
+ * to have been rotated: the rest of the old file is returned (including an
+ * unterminated last line) and then the new file is read from the beginning.
+ *
+ * The end of the input is only reached after {@link #stop()} was called or the
+ * reading thread was interrupted.
+ *
+ * @author Felix Wiemuth
+ */
+class FollowLineIterator extends StreamLineIterator {
+
+    /**
+     * Default maximum delay between polls in milliseconds.
+     */
+    public static final long DEFAULT_MAX_DELAY = 10;
+
+    private final Path file;
+    private final Charset charset;
+    private final long maxDelay;
+    private FileChannel channel;
+    private Object fileKey; // of the opened file, null if not supported
+    private long position; // file position after the last byte read
+    private byte[] buffer = new byte[64 * 1024];
+    private int start; // index of the first byte not yet returned
+    private int scanned; // index up to which no line terminator was found
+    private int end; // index after the last byte read
+    private boolean skipLF; // the last line ended with '\r' which may be followed by '\n'
+    private volatile boolean stopped;
+
+    /**
+     *
+     * @param file the file to follow
+     * @param charset the charset of the file, which must encode ASCII
+     * characters as single bytes of the same value (as UTF-8 and ISO-8859-1
+     * do)
+     * @param maxDelay the maximum delay between polls in milliseconds
+     * @param window the maximum number of lines to keep in memory (at least 2)
+     * @throws IOException if the file cannot be opened
+     */
+    FollowLineIterator(Path file, Charset charset, long maxDelay, int window) throws IOException {
+        super(window);
+        if (!MappedLineIterator.isAsciiCompatible(charset)) {
+            throw new IllegalArgumentException("Charset " + charset + " is not ASCII-compatible.");
+        }
+        if (maxDelay < 1) {
+            throw new IllegalArgumentException("Maximum delay must be positive.");
+        }
+        this.file = file;
+        this.charset = charset;
+        this.maxDelay = maxDelay;
+        open();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        position = 0;
+        start = 0;
+        scanned = 0;
+        end = 0;
+        skipLF = false;
+    }
+
+    /**
+     * End the input: the next call to {@link #readLine()} (or the one waiting
+     * for data) returns null, even if more lines are available. Can be called
+     * from any thread.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    @Override
+    protected CharSequence readLine() throws IOException {
+        long delay = 1;
+        while (true) {
+            if (stopped) {
+                return null;
+            }
+            if (skipLF && start < end) {
+                if (buffer[start] == '\n') {
+                    start++;
+                }
+                skipLF = false;
+                scanned = start;
+            }
+            for (int i = Math.max(scanned, start); i < end; i++) {
+                byte b = buffer[i];
+                if (b == '\n' || b == '\r') {
+                    String line = new String(buffer, start, i - start, charset);
+                    start = i + 1;
+                    scanned = start;
+                    if (b == '\r') {
+                        if (start < end) {
+                            if (buffer[start] == '\n') {
+                                start++;
+                                scanned = start;
+                            }
+                        } else {
+                            skipLF = true;
+                        }
+                    }
+                    return line;
+                }
+            }
+            scanned = end;
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            if (fill() > 0) {
+                delay = 1;
+                continue;
+            }
+            if (channel.size() < position) { // truncated
+                position = 0;
+                start = 0;
+                scanned = 0;
+                end = 0;
+                skipLF = false;
+                delay = 1;
+                continue;
+            }
+            if (isReplaced()) {
+                String rest = start < end && !skipLF ? new String(buffer, start, end - start, charset) : null;
+                channel.close();
+                open();
+                delay = 1;
+                if (rest != null) {
+                    return rest;
+                }
+                continue;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            delay = Math.min(2 * delay, maxDelay);
+        }
+    }
+
+    /**
+     * Read the bytes appended to the file since the last call.
+     *
+     * @return the number of bytes read
+     */
+    private int fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+        } else if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        int n = channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end), position);
+        if (n <= 0) {
+            return 0;
+        }
+        end += n;
+        position += n;
+        return n;
+    }
+
+    /**
+     *
+     * @return whether the path refers to another file than the one opened
+     */
+    private boolean isReplaced() throws IOException {
+        if (fileKey == null) {
+            return false;
+        }
+        try {
+            return !fileKey.equals(Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+        } catch (NoSuchFileException ex) { // moved away, the new file was not created yet
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import felixwiemuth.linearfileparser.localization.R;
+
+/**
+ * Indicates that the argument given with a key cannot be decoded into the
+ * expected type.
+ *
+ * @author Felix Wiemuth
+ */
+public class IllegalArgumentFormatException extends ParseException {
+
+    private final String key;
+    private final String argument;
+
+    public IllegalArgumentFormatException(int line, String key, String argument) {
+        super(line);
+        this.key = key;
+        this.argument = argument;
+    }
+
+    /**
+     *
+     * @param line
+     * @param key
+     * @param argument
+     * @param stackTrace whether to record the stack trace
+     */
+    public IllegalArgumentFormatException(int line, String key, String argument, boolean stackTrace) {
+        super(line, null, stackTrace);
+        this.key = key;
+        this.argument = argument;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getArgument() {
+        return argument;
+    }
+
+    @Override
+    protected String getMsg() {
+        return format(R.ILLEGAL_ARGUMENT, argument, key);
+    }
+}
@@ -31,6 +31,17 @@ public class IllegalKeyException extends ParseException {
         this.key = key;
     }
 
+    /**
+     *
+     * @param line
+     * @param key
+     * @param stackTrace whether to record the stack trace
+     */
+    public IllegalKeyException(int line, String key, boolean stackTrace) {
+        super(line, null, stackTrace);
+        this.key = key;
+    }
+
     public String getKey() {
         return key;
     }
@@ -38,6 +38,17 @@ public class IllegalLineException extends ParseException {
         this.msg = msg;
     }
 
+    /**
+     *
+     * @param line
+     * @param msg a detailed message or null to use the default message
+     * @param stackTrace whether to record the stack trace
+     */
+    public IllegalLineException(int line, String msg, boolean stackTrace) {
+        super(line, null, stackTrace);
+        this.msg = msg;
+    }
+
     @Override
     protected String getMsg() {
         if (msg == null) {
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.ListIterator;
+
+/**
+ * A key processor requiring a decimal integer argument, which is decoded
+ * directly from the line into an {@code int} (see
+ * {@link LineKeyProcessor#decodeLong(CharSequence, int, int, long, long, ListIterator)}).
+ * A missing argument causes {@link MissingArgumentException}, an argument
+ * which is not a number in the allowed range
+ * {@link IllegalArgumentFormatException}.
+ *
+ * @author Felix Wiemuth
+ */
+public abstract class IntKeyProcessor extends LineKeyProcessor {
+
+    private final int min;
+    private final int max;
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param oneShot whether this key may only be used once in the section of
+     * this processor - when used a second time, {@link RepeatedKeyException} is
+     * thrown
+     */
+    public IntKeyProcessor(String key, boolean oneShot) {
+        super(key, oneShot);
+        this.min = Integer.MIN_VALUE;
+        this.max = Integer.MAX_VALUE;
+    }
+
+    /**
+     *
+     * @param key the key to be processed
+     */
+    public IntKeyProcessor(String key) {
+        super(key);
+        this.min = Integer.MIN_VALUE;
+        this.max = Integer.MAX_VALUE;
+    }
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param oneShot whether this key may only be used once in the section of
+     * this processor - when used a second time, {@link RepeatedKeyException} is
+     * thrown
+     * @param min the smallest allowed value
+     * @param max the largest allowed value
+     */
+    public IntKeyProcessor(String key, boolean oneShot, int min, int max) {
+        super(key, oneShot);
+        if (min > max) {
+            throw new IllegalArgumentException("Minimum must not be larger than maximum.");
+        }
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public final void process(CharSequence line, int argStart, int argEnd, ListIterator<String> it) throws ParseException {
+        process((int) decodeLong(line, argStart, argEnd, min, max, it), it);
+    }
+
+    /**
+     * Process the key at the current line.
+     *
+     * @param value the decoded argument
+     * @param it iterator over the list of lines, pointing to the line after the
+     * current - the iterator can be used to modify the list or the current
+     * position and the parser will continue with this same iterator
+     * @throws ParseException
+     */
+    public abstract void process(int value, ListIterator<String> it) throws ParseException;
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.Arrays;
+
+/**
+ * Classifies lines by walking a trie built over the comment prefix, all
+ * section specifications (section prefix followed by section ID) and all keys
+ * (key prefix followed by key). A line is classified and its
+ * {@link LinearFileParser.KeyProcessor} resolved in a single pass over the
+ * beginning of the line without creating intermediate strings. The result is
+ * the same as checking the prefixes one after another as described in
+ * {@link LinearFileParser}.
+ *
+ * Key processors are stored per section index (see
+ * {@link #addKeyProcessor(int, LinearFileParser.KeyProcessor)}), where
+ * section specific processors take precedence over global ones.
+ *
+ * @author Felix Wiemuth
+ * @param <S> the type of objects representing sections
+ */
+final class LineClassifier<S> {
+
+    /**
+     * The line starts with the comment prefix.
+     */
+    static final int COMMENT = 0;
+    /**
+     * The line specifies a known section, which is stored in
+     * {@link Match#section}.
+     */
+    static final int SECTION = 1;
+    /**
+     * The line starts with the section prefix but does not specify a known
+     * section.
+     */
+    static final int UNKNOWN_SECTION = 2;
+    /**
+     * The line specifies a key for which {@link Match#processor} is
+     * responsible.
+     */
+    static final int KEY = 3;
+    /**
+     * The line starts with the key prefix but no processor is responsible for
+     * the key in the current section.
+     */
+    static final int UNKNOWN_KEY = 4;
+    /**
+     * The line does not start with any of the prefixes.
+     */
+    static final int OTHER = 5;
+
+    /**
+     * Holds the details of the last classification. Can be reused for
+     * subsequent calls to avoid allocation.
+     *
+     * @param <S>
+     */
+    static final class Match<S> {
+
+        S section;
+        LinearFileParser.KeyProcessor processor;
+        /**
+         * Index of the first character after the key (for {@link #KEY} and
+         * {@link #UNKNOWN_KEY}).
+         */
+        int keyEnd;
+    }
+
+    private static final class Node<S> {
+
+        private char[] labels = new char[0]; // sorted
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Node<S>[] children = new Node[0];
+        private boolean comment; // the comment prefix ends here
+        private boolean sectionPrefix; // the section prefix ends here
+        private boolean keyPrefix; // the key prefix ends here
+        private S section; // a section specification ends here
+        private LinearFileParser.KeyProcessor globalProcessor; // a global key ends here
+        private LinearFileParser.KeyProcessor[] sectionProcessors; // section specific keys ending here, by section index
+
+        private Node<S> child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i < 0 ? null : children[i];
+        }
+
+        private Node<S> getOrAddChild(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            Node<S> node = new Node<>();
+            char[] newLabels = new char[labels.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(labels, i, newLabels, i + 1, labels.length - i);
+            newLabels[i] = c;
+            Node<S>[] newChildren = Arrays.copyOf(children, children.length + 1);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            newChildren[i] = node;
+            labels = newLabels;
+            children = newChildren;
+            return node;
+        }
+
+        private LinearFileParser.KeyProcessor processorFor(int sectionIndex) {
+            if (sectionProcessors != null && sectionIndex >= 0 && sectionIndex < sectionProcessors.length && sectionProcessors[sectionIndex] != null) {
+                return sectionProcessors[sectionIndex];
+            }
+            return globalProcessor;
+        }
+    }
+
+    private final Node<S> root = new Node<>();
+    private final String sectionPrefix;
+    private final String keyPrefix;
+    private final boolean sectionPrefixIsKeyPrefix;
+
+    /**
+     *
+     * @param commentPrefix may be null
+     * @param sectionPrefix may be null
+     * @param keyPrefix
+     */
+    LineClassifier(String commentPrefix, String sectionPrefix, String keyPrefix) {
+        this.sectionPrefix = sectionPrefix;
+        this.keyPrefix = keyPrefix;
+        this.sectionPrefixIsKeyPrefix = keyPrefix.equals(sectionPrefix);
+        if (commentPrefix != null) {
+            insert(commentPrefix).comment = true;
+        }
+        if (sectionPrefix != null) {
+            insert(sectionPrefix).sectionPrefix = true;
+        }
+        insert(keyPrefix).keyPrefix = true;
+    }
+
+    private Node<S> insert(String s) {
+        Node<S> node = root;
+        for (int i = 0; i < s.length(); i++) {
+            node = node.getOrAddChild(s.charAt(i));
+        }
+        return node;
+    }
+
+    void addSection(String sectionID, S section) {
+        if (sectionPrefix != null) {
+            insert(sectionPrefix + sectionID).section = section;
+        }
+    }
+
+    /**
+     *
+     * @param sectionIndex index of the section the processor belongs to or -1
+     * for a global processor
+     * @param processor
+     */
+    void addKeyProcessor(int sectionIndex, LinearFileParser.KeyProcessor processor) {
+        Node<S> node = insert(keyPrefix + processor.key);
+        if (sectionIndex < 0) {
+            node.globalProcessor = processor;
+        } else {
+            if (node.sectionProcessors == null) {
+                node.sectionProcessors = new LinearFileParser.KeyProcessor[sectionIndex + 1];
+            } else if (node.sectionProcessors.length <= sectionIndex) {
+                node.sectionProcessors = Arrays.copyOf(node.sectionProcessors, sectionIndex + 1);
+            }
+            node.sectionProcessors[sectionIndex] = processor;
+        }
+    }
+
+    /**
+     * Classify a line.
+     *
+     * @param line
+     * @param sectionIndex index of the current section (-1 if only global
+     * processors apply)
+     * @param match receives the details of the classification
+     * @return one of the constants defined in this class
+     */
+    int classify(CharSequence line, int sectionIndex, Match<S> match) {
+        int length = line.length();
+        Node<S> node = root;
+        boolean isSection = false;
+        boolean isKey = false;
+        int keyEnd = -1;
+        LinearFileParser.KeyProcessor processor = null;
+        int i = 0;
+        while (true) {
+            if (node.comment) {
+                return COMMENT;
+            }
+            isSection |= node.sectionPrefix;
+            isKey |= node.keyPrefix;
+            if (isKey && keyEnd == -1 && (i == length || line.charAt(i) == ' ')) {
+                keyEnd = i; // keys end before the first space
+                processor = node.processorFor(sectionIndex);
+            }
+            if (i == length) {
+                if (node.section != null) {
+                    match.section = node.section;
+                    return SECTION;
+                }
+                break;
+            }
+            Node<S> next = node.child(line.charAt(i));
+            if (next == null) {
+                break;
+            }
+            node = next;
+            i++;
+        }
+        if (isSection && !sectionPrefixIsKeyPrefix) {
+            return UNKNOWN_SECTION;
+        }
+        if (!isKey) {
+            return OTHER;
+        }
+        if (keyEnd == -1) {
+            keyEnd = i;
+            while (keyEnd < length && line.charAt(keyEnd) != ' ') {
+                keyEnd++;
+            }
+        }
+        match.keyEnd = keyEnd;
+        match.processor = processor;
+        return processor == null ? UNKNOWN_KEY : KEY;
+    }
+}
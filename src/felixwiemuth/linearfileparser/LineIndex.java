@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the lines specifying sections and keys in a file, stored in a
+ * binary sidecar file. It is created by
+ * {@link LinearFileParser#_index(File, Charset, Path)} in a single pass over
+ * the file and records the line index and byte offset of every such line, so
+ * that parsing can start at a section or key without reading the file up to
+ * there (see
+ * {@link LinearFileParser#_parseSection(File, LineIndex, String, int)} and
+ * {@link LinearFileParser#_parseKey(File, LineIndex, String, int)}).
+ *
+ * The index file is memory-mapped when opened, so opening it and looking up
+ * occurrences takes constant time regardless of the size of the indexed file.
+ * Sections are detected by the lines specifying them, sections changed
+ * manually by processors are not reflected in the index.
+ *
+ * @author Felix Wiemuth
+ */
+public final class LineIndex {
+
+    private static final int MAGIC = 0x4c46504c; // "LFPL"
+    private static final int FORMAT = 1;
+    private static final int SECTION_RECORD = 16; // offset, line, section symbol
+    private static final int KEY_RECORD = 12; // offset, line
+
+    /**
+     * The occurrences of a section or key.
+     */
+    private static final class Symbol {
+
+        private final int index;
+        private final long records; // position of the first record in the index file
+        private final int count;
+
+        private Symbol(int index, long records, int count) {
+            this.index = index;
+            this.records = records;
+            this.count = count;
+        }
+    }
+
+    private final MappedByteBuffer map;
+    private final long fileSize;
+    private final long fileModified;
+    private final Charset charset;
+    private final Map<String, Symbol> sections = new HashMap<>();
+    private final Map<String, Symbol> keys = new HashMap<>();
+    private final List<String> sectionIDs = new ArrayList<>(); // by symbol index
+    private final int sequenceStart; // position of the records of all section lines in order
+    private final int sequenceCount;
+
+    private LineIndex(MappedByteBuffer map) throws IOException {
+        this.map = map;
+        if (map.getInt() != MAGIC || map.getInt() != FORMAT) {
+            throw new IOException("Not a line index.");
+        }
+        fileSize = map.getLong();
+        fileModified = map.getLong();
+        charset = Charset.forName(readString());
+        int symbolCount = map.getInt();
+        for (int i = 0; i < symbolCount; i++) {
+            boolean section = map.get() == 0;
+            String name = readString();
+            Symbol symbol = new Symbol(i, map.getLong(), map.getInt());
+            if (section) {
+                sections.put(name, symbol);
+            } else {
+                keys.put(name, symbol);
+            }
+            sectionIDs.add(section ? name : null);
+        }
+        sequenceCount = map.getInt();
+        sequenceStart = map.position();
+    }
+
+    private String readString() {
+        char[] chars = new char[map.getInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = map.getChar();
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Open an index file.
+     *
+     * @param indexFile
+     * @return
+     * @throws IOException also if the file is not a valid index
+     */
+    public static LineIndex open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Line index is too large.");
+            }
+            return new LineIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (RuntimeException ex) { // e.g. BufferUnderflowException
+            throw new IOException("Invalid line index.", ex);
+        }
+    }
+
+    /**
+     * Check whether the given file has the same size and modification time as
+     * the file this index was created for.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public boolean isValidFor(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return attributes.size() == fileSize && attributes.lastModifiedTime().toMillis() == fileModified;
+    }
+
+    /**
+     *
+     * @return the charset the index was created with
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     *
+     * @param sectionID
+     * @return the number of lines specifying the section
+     */
+    public int getSectionCount(String sectionID) {
+        Symbol symbol = sections.get(sectionID);
+        return symbol == null ? 0 : symbol.count;
+    }
+
+    /**
+     *
+     * @param key
+     * @return the number of lines starting with the key
+     */
+    public int getKeyCount(String key) {
+        Symbol symbol = keys.get(key);
+        return symbol == null ? 0 : symbol.count;
+    }
+
+    private int record(Map<String, Symbol> symbols, String name, int occurrence, int recordSize) {
+        Symbol symbol = symbols.get(name);
+        if (symbol == null || occurrence < 0 || occurrence >= symbol.count) {
+            throw new IndexOutOfBoundsException("No occurrence " + occurrence + " of \"" + name + "\".");
+        }
+        return (int) symbol.records + occurrence * recordSize;
+    }
+
+    /**
+     *
+     * @param sectionID
+     * @param occurrence the number of the occurrence, starting with 0
+     * @return the index of the line specifying the section
+     */
+    public int getSectionLine(String sectionID, int occurrence) {
+        return map.getInt(record(sections, sectionID, occurrence, SECTION_RECORD) + 8);
+    }
+
+    /**
+     *
+     * @param sectionID
+     * @param occurrence the number of the occurrence, starting with 0
+     * @return the byte offset of the line specifying the section
+     */
+    public long getSectionOffset(String sectionID, int occurrence) {
+        return map.getLong(record(sections, sectionID, occurrence, SECTION_RECORD));
+    }
+
+    /**
+     *
+     * @param key
+     * @param occurrence the number of the occurrence, starting with 0
+     * @return the index of the line
+     */
+    public int getKeyLine(String key, int occurrence) {
+        return map.getInt(record(keys, key, occurrence, KEY_RECORD) + 8);
+    }
+
+    /**
+     *
+     * @param key
+     * @param occurrence the number of the occurrence, starting with 0
+     * @return the byte offset of the line
+     */
+    public long getKeyOffset(String key, int occurrence) {
+        return map.getLong(record(keys, key, occurrence, KEY_RECORD));
+    }
+
+    /**
+     * Find the last line specifying a section before the given line.
+     *
+     * @param line
+     * @return the position of the line in the sequence of all lines
+     * specifying a section or -1 if there is none
+     */
+    int sectionBefore(int line) {
+        int low = 0;
+        int high = sequenceCount - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sequenceLine(mid) < line) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param i
+     * @return the index of the line specifying a section at position
+     * {@code i} in the sequence of all such lines
+     */
+    int sequenceLine(int i) {
+        return map.getInt(sequenceStart + i * SECTION_RECORD + 8);
+    }
+
+    /**
+     *
+     * @param i
+     * @return the ID of the section specified at position {@code i} in the
+     * sequence of all lines specifying a section
+     */
+    String sequenceSectionID(int i) {
+        return sectionIDs.get(map.getInt(sequenceStart + i * SECTION_RECORD + 12));
+    }
+
+    /**
+     *
+     * @param sectionID
+     * @param occurrence
+     * @return the position of the occurrence in the sequence of all lines
+     * specifying a section
+     */
+    int sequencePosition(String sectionID, int occurrence) {
+        return map.getInt(record(sections, sectionID, occurrence, SECTION_RECORD) + 12);
+    }
+
+    int getSequenceCount() {
+        return sequenceCount;
+    }
+
+    /**
+     * Collects the lines of a file and writes the index.
+     */
+    static final class Builder {
+
+        /**
+         * Records of a symbol: pairs of offset and line (and the position in
+         * the sequence of sections for sections).
+         */
+        private static final class Records {
+
+            private final String name;
+            private final int index;
+            private final boolean section;
+            private long[] offsets = new long[16];
+            private int[] lines = new int[16];
+            private int[] positions; // for sections
+            private int count;
+
+            private Records(String name, int index, boolean section) {
+                this.name = name;
+                this.index = index;
+                this.section = section;
+                if (section) {
+                    positions = new int[16];
+                }
+            }
+
+            private void add(long offset, int line, int position) {
+                if (count == lines.length) {
+                    offsets = Arrays.copyOf(offsets, 2 * count);
+                    lines = Arrays.copyOf(lines, 2 * count);
+                    if (section) {
+                        positions = Arrays.copyOf(positions, 2 * count);
+                    }
+                }
+                offsets[count] = offset;
+                lines[count] = line;
+                if (section) {
+                    positions[count] = position;
+                }
+                count++;
+            }
+        }
+
+        private final Map<String, Records> sections = new LinkedHashMap<>();
+        private final Map<String, Records> keys = new LinkedHashMap<>();
+        private final List<Records> symbols = new ArrayList<>();
+        private final Records sequence = new Records(null, -1, true); // all section lines, positions are the symbols
+
+        private Records records(Map<String, Records> map, String name, boolean section) {
+            Records records = map.get(name);
+            if (records == null) {
+                records = new Records(name, symbols.size(), section);
+                map.put(name, records);
+                symbols.add(records);
+            }
+            return records;
+        }
+
+        void addSection(String sectionID, int line, long offset) {
+            Records records = records(sections, sectionID, true);
+            records.add(offset, line, sequence.count);
+            sequence.add(offset, line, records.index);
+        }
+
+        void addKey(String key, int line, long offset) {
+            records(keys, key, false).add(offset, line, 0);
+        }
+
+        /**
+         * Write the index file (atomically replacing an existing file).
+         *
+         * @param indexFile
+         * @param file the indexed file
+         * @param charset
+         * @throws IOException
+         */
+        void write(Path indexFile, Path file, Charset charset) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            // the records of the symbols follow the header
+            long position = 4 + 4 + 8 + 8 + 4 + 2 * charset.name().length() + 4;
+            for (Records records : symbols) {
+                position += 1 + 4 + 2 * records.name.length() + 8 + 4;
+            }
+            position += 4 + (long) SECTION_RECORD * sequence.count;
+            if (position + (long) SECTION_RECORD * sequence.count + totalKeys() * KEY_RECORD > Integer.MAX_VALUE) {
+                throw new IOException("Line index is too large.");
+            }
+            Path tmp = Files.createTempFile(indexFile.toAbsolutePath().getParent(), "index", ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT);
+                    out.writeLong(attributes.size());
+                    out.writeLong(attributes.lastModifiedTime().toMillis());
+                    writeString(out, charset.name());
+                    out.writeInt(symbols.size());
+                    for (Records records : symbols) {
+                        out.writeByte(records.section ? 0 : 1);
+                        writeString(out, records.name);
+                        out.writeLong(position);
+                        out.writeInt(records.count);
+                        position += (long) (records.section ? SECTION_RECORD : KEY_RECORD) * records.count;
+                    }
+                    out.writeInt(sequence.count);
+                    writeRecords(out, sequence);
+                    for (Records records : symbols) {
+                        writeRecords(out, records);
+                    }
+                }
+                try {
+                    Files.move(tmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private long totalKeys() {
+            long total = 0;
+            for (Records records : keys.values()) {
+                total += records.count;
+            }
+            return total;
+        }
+
+        private static void writeRecords(DataOutputStream out, Records records) throws IOException {
+            for (int i = 0; i < records.count; i++) {
+                out.writeLong(records.offsets[i]);
+                out.writeInt(records.lines[i]);
+                if (records.section) {
+                    out.writeInt(records.positions[i]);
+                }
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String s) throws IOException {
+            out.writeInt(s.length());
+            out.writeChars(s);
+        }
+    }
+}
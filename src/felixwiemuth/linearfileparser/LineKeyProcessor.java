@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.ListIterator;
+
+/**
+ * A key processor which receives the current line together with the position
+ * of the argument instead of the argument as a separate string. The parser
+ * does not create any strings for lines dispatched to such a processor, so
+ * the processor can decide whether (and which part of) the argument has to be
+ * materialized.
+ *
+ * The line is only guaranteed to be valid during the call to
+ * {@link #process(CharSequence, int, int, ListIterator)}. To keep (parts of)
+ * it, convert it to a {@link String}.
+ *
+ * @author Felix Wiemuth
+ */
+public abstract class LineKeyProcessor extends LinearFileParser.KeyProcessor {
+
+    // exactly representable powers of ten for decoding decimals
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     *
+     * @param key the key to be processed
+     * @param oneShot whether this key may only be used once in the section of
+     * this processor - when used a second time, {@link RepeatedKeyException} is
+     * thrown
+     */
+    public LineKeyProcessor(String key, boolean oneShot) {
+        super(key, oneShot);
+    }
+
+    /**
+     *
+     * @param key the key to be processed
+     */
+    public LineKeyProcessor(String key) {
+        super(key);
+    }
+
+    @Override
+    final void processLine(CharSequence line, int argStart, ListIterator<String> it, SymbolTable symbols) throws ParseException {
+        int start = Math.min(argStart, line.length());
+        process(line, start, line.length(), it);
+    }
+
+    /**
+     * Calls {@link #process(CharSequence, int, int, ListIterator)} with the
+     * argument as line.
+     *
+     * @param arg
+     * @param it
+     * @throws ParseException
+     */
+    @Override
+    public final void process(String arg, ListIterator<String> it) throws ParseException {
+        if (arg == null) {
+            process("", 0, 0, it);
+        } else {
+            process(arg, 0, arg.length(), it);
+        }
+    }
+
+    /**
+     * Process the key at the current line.
+     *
+     * @param line the current line
+     * @param argStart index of the first character of the argument in line
+     * @param argEnd index after the last character of the argument in line
+     * (equals argStart if the line ends after the key)
+     * @param it iterator over the list of lines, pointing to the line after the
+     * current - the iterator can be used to modify the list or the current
+     * position and the parser will continue with this same iterator
+     * @throws ParseException to indicate a syntax or semantic error
+     */
+    public abstract void process(CharSequence line, int argStart, int argEnd, ListIterator<String> it) throws ParseException;
+
+    /**
+     * Check whether a range of a line equals a string without creating a
+     * substring.
+     *
+     * @param line
+     * @param start
+     * @param end
+     * @param s
+     * @return
+     */
+    protected static boolean regionEquals(CharSequence line, int start, int end, String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (line.charAt(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return the index of the first character in the range which is not a
+     * space or tab
+     */
+    static int trimStart(CharSequence line, int start, int end) {
+        while (start < end && isBlank(line.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     *
+     * @return the index after the last character in the range which is not a
+     * space or tab
+     */
+    static int trimEnd(CharSequence line, int start, int end) {
+        while (end > start && isBlank(line.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * Create the exception to be thrown when the argument of the current line
+     * cannot be decoded. It records its stack trace only if enabled for the
+     * parse (see {@link #recordStackTraces()}).
+     *
+     * @param line
+     * @param start
+     * @param end
+     * @param it
+     * @return
+     */
+    protected IllegalArgumentFormatException illegalArgument(CharSequence line, int start, int end, ListIterator<String> it) {
+        return new IllegalArgumentFormatException(it.nextIndex(), key, line.subSequence(start, end).toString(), recordStackTraces());
+    }
+
+    /**
+     * Decode a decimal integer (with optional sign) from a range of a line
+     * without creating a substring. Spaces and tabs around the number are
+     * ignored.
+     *
+     * @param line
+     * @param start
+     * @param end
+     * @param min the smallest allowed value
+     * @param max the largest allowed value
+     * @param it the iterator passed to the processor (to determine the line
+     * number for exceptions)
+     * @return
+     * @throws MissingArgumentException if the range is blank
+     * @throws IllegalArgumentFormatException if the range is not a number or
+     * not in [min, max]
+     */
+    protected final long decodeLong(CharSequence line, int start, int end, long min, long max, ListIterator<String> it) throws ParseException {
+        start = trimStart(line, start, end);
+        end = trimEnd(line, start, end);
+        if (start == end) {
+            throw new MissingArgumentException(it.nextIndex(), key, recordStackTraces());
+        }
+        int i = start;
+        boolean negative = false;
+        char c = line.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        if (i == end) {
+            throw illegalArgument(line, start, end, it);
+        }
+        // accumulate negatively to cover Long.MIN_VALUE
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value < limit / 10 || value * 10 < limit + digit) {
+                throw illegalArgument(line, start, end, it);
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            value = -value;
+        }
+        if (value < min || value > max) {
+            throw illegalArgument(line, start, end, it);
+        }
+        return value;
+    }
+
+    /**
+     * Decode a floating point number from a range of a line. Plain decimals
+     * with up to 15 significant digits and a small exponent are decoded
+     * without creating a substring, all other arguments are passed to
+     * {@link Double#parseDouble(String)}. Spaces and tabs around the number
+     * are ignored.
+     *
+     * @param line
+     * @param start
+     * @param end
+     * @param it the iterator passed to the processor (to determine the line
+     * number for exceptions)
+     * @return
+     * @throws MissingArgumentException if the range is blank
+     * @throws IllegalArgumentFormatException if the range is not a number
+     */
+    protected final double decodeDouble(CharSequence line, int start, int end, ListIterator<String> it) throws ParseException {
+        start = trimStart(line, start, end);
+        end = trimEnd(line, start, end);
+        if (start == end) {
+            throw new MissingArgumentException(it.nextIndex(), key, recordStackTraces());
+        }
+        int i = start;
+        boolean negative = false;
+        char c = line.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0; // significant digits in mantissa
+        int digits = 0;
+        int exponent = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (mantissa != 0 || c != '0') {
+                    significant++;
+                    if (significant > 15) {
+                        break;
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (point) {
+                    exponent--;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end && digits > 0 && (line.charAt(i) == 'e' || line.charAt(i) == 'E')) {
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (j < end && (line.charAt(j) == '-' || line.charAt(j) == '+')) {
+                negativeExponent = line.charAt(j) == '-';
+                j++;
+            }
+            int e = 0;
+            int first = j;
+            while (j < end && line.charAt(j) >= '0' && line.charAt(j) <= '9' && e < 1000) {
+                e = e * 10 + (line.charAt(j) - '0');
+                j++;
+            }
+            if (j > first) {
+                exponent += negativeExponent ? -e : e;
+                i = j;
+            }
+        }
+        if (i == end && digits > 0 && exponent >= -22 && exponent <= 22) {
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(line.subSequence(start, end).toString());
+        } catch (NumberFormatException ex) {
+            throw illegalArgument(line, start, end, it);
+        }
+    }
+
+    /**
+     * Decode "true" or "false" (ignoring case) from a range of a line. Spaces
+     * and tabs around the value are ignored.
+     *
+     * @param line
+     * @param start
+     * @param end
+     * @param it the iterator passed to the processor (to determine the line
+     * number for exceptions)
+     * @return
+     * @throws MissingArgumentException if the range is blank
+     * @throws IllegalArgumentFormatException if the range is neither "true"
+     * nor "false"
+     */
+    protected final boolean decodeBoolean(CharSequence line, int start, int end, ListIterator<String> it) throws ParseException {
+        start = trimStart(line, start, end);
+        end = trimEnd(line, start, end);
+        if (start == end) {
+            throw new MissingArgumentException(it.nextIndex(), key, recordStackTraces());
+        }
+        if (regionEqualsIgnoreCase(line, start, end, "true")) {
+            return true;
+        }
+        if (regionEqualsIgnoreCase(line, start, end, "false")) {
+            return false;
+        }
+        throw illegalArgument(line, start, end, it);
+    }
+
+    /**
+     * Check whether a range of a line equals a string ignoring case without
+     * creating a substring.
+     *
+     * @param line
+     * @param start
+     * @param end
+     * @param s
+     * @return
+     */
+    protected static boolean regionEqualsIgnoreCase(CharSequence line, int start, int end, String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char a = line.charAt(start + i);
+            char b = s.charAt(i);
+            if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b) && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.ListIterator;
+
+/**
+ * An iterator over lines which can also return the next line as a
+ * {@link CharSequence}. This allows the parser to inspect a line without
+ * creating a {@link String} for it, which only happens if a processor needs
+ * one.
+ *
+ * @author Felix Wiemuth
+ */
+interface LineViewIterator extends ListIterator<String> {
+
+    /**
+     * Same as {@link #next()} but returns the line as a view which may be
+     * backed by the underlying input. The view stays valid after the iterator
+     * has moved on.
+     *
+     * @return the next line
+     */
+    CharSequence nextView();
+}
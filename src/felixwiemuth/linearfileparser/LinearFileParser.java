@@ -16,19 +16,35 @@
  */
 package felixwiemuth.linearfileparser;
 
+import felixwiemuth.linearfileparser.localization.CachingResourceProvider;
 import felixwiemuth.linearfileparser.localization.DefaultResourceProvider;
 import felixwiemuth.linearfileparser.localization.ResourceProvider;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * A line-based parser for simple text files with keywords. This is a base class
@@ -88,6 +104,21 @@ import java.util.ListIterator;
  * processor exists or if it returns false, then {@link IllegalLineException} is
  * thrown.
  *
+ * The definition of a parser (prefixes, sections, key processors and the
+ * default processor) cannot be changed anymore once parsing started. The state
+ * of a parse (iterator, current section and which one-shot keys were used) is
+ * kept separately for every call to a {@code _parse} method and the thread
+ * executing it. A parser can therefore be used for several files one after
+ * another and, as long as the processors allow it, from several threads at
+ * the same time. To create further instances of a subclass without
+ * registering sections and processors again, use
+ * {@link #LinearFileParser(LinearFileParser)}.
+ *
+ * By default, parsing stops with the first {@link ParseException}. To find
+ * all errors in a single pass, set a maximum number of errors with
+ * {@link #setMaxErrors(int)}: exceptions are then collected in a
+ * {@link ParseErrorReport} and parsing continues with the next line.
+ *
  * @author Felix Wiemuth
  */
 public class LinearFileParser {
@@ -99,7 +130,6 @@ public class LinearFileParser {
 
         public final String key;
         private final boolean oneShot;
-        private int lastOccurrence = -1;
 
         /**
          *
@@ -121,15 +151,36 @@ public class LinearFileParser {
             this(key, false);
         }
 
-        private void _process(String arg, ListIterator<String> it) throws RepeatedKeyException, ParseException {
-            if (oneShot) {
-                if (lastOccurrence != -1) {
-                    throw new RepeatedKeyException(it.nextIndex(), key, lastOccurrence);
-                } else {
-                    lastOccurrence = it.nextIndex();
-                }
-            }
-            process(arg, it);
+        /**
+         * Called by the parser for a line with this processor's key. Extracts
+         * the argument and calls {@link #process(String, ListIterator)}. Can be
+         * overridden by processors of this package which work on the line
+         * directly.
+         *
+         * @param line the current line
+         * @param argStart the index in line where the argument starts (the
+         * line has no argument if this is not less than its length)
+         * @param it
+         * @param symbols the table to take the argument from (may be null)
+         */
+        void processLine(CharSequence line, int argStart, ListIterator<String> it, SymbolTable symbols) throws ParseException {
+            process(argument(line, argStart, symbols), it);
+        }
+
+        /**
+         * Whether exceptions created by processors should record their stack
+         * trace, as set with
+         * {@link LinearFileParser#setExceptionStackTraces(boolean)} for the
+         * parser whose parse is in progress in the current thread. Pass the
+         * result to the constructors of exceptions with a {@code stackTrace}
+         * parameter.
+         *
+         * @return the setting of the current parse or true if no parse is in
+         * progress in the current thread
+         */
+        protected static boolean recordStackTraces() {
+            ParseContext ctx = ACTIVE_CONTEXT.get();
+            return ctx == null || ctx.stackTraces;
         }
 
         /**
@@ -175,28 +226,35 @@ public class LinearFileParser {
         boolean run(String line, ListIterator<String> it) throws IllegalLineException, ParseException;
     }
 
-    private class Section {
+    private static class Section {
 
         private final String ID;
+        private final int index; // position in the order of creation, -1 for GLOBAL_PROCESSORS
+        private final boolean independent; // whether blocks of this section may be processed in parallel
         private final Action actionOnEnter;
         private final Action actionOnLeave;
         private final HashMap<String, KeyProcessor> keyProcessors = new HashMap<>();
 
         public Section(String id) {
-            this(id, null, null);
+            this(id, -1, null, null, false);
         }
 
         /**
          * @param id the ID of this section
+         * @param index the index of this section
          * @param actionOnEnter action to be performed before entering this
          * section (iterator points to first line after switching to the
          * section)
          * @param actionOnLeave action to be performed after leaving this
          * section (iterator points to the line which specifies a new section or
          * the last line if all lines were processed)
+         * @param independent whether blocks of this section may be processed
+         * in parallel
          */
-        public Section(String id, Action actionOnEnter, Action actionOnLeave) {
+        public Section(String id, int index, Action actionOnEnter, Action actionOnLeave, boolean independent) {
             this.ID = id;
+            this.index = index;
+            this.independent = independent;
             this.actionOnEnter = actionOnEnter;
             this.actionOnLeave = actionOnLeave;
         }
@@ -216,13 +274,6 @@ public class LinearFileParser {
             return keyProcessors.containsKey(key);
         }
 
-        public void process(String key, String arg, ListIterator<String> it) throws UnknownKeyException, RepeatedKeyException, ParseException {
-            if (!containsKey(key)) {
-                throw new IllegalStateException("Implementation error (please contact developer): no key processor for the given key.");
-            }
-            keyProcessors.get(key)._process(arg, it);
-        }
-
         public void enter(ListIterator<String> it) {
             if (actionOnEnter != null) {
                 actionOnEnter.run(it);
@@ -237,20 +288,142 @@ public class LinearFileParser {
 
     }
 
-    private ResourceProvider rp = new DefaultResourceProvider();
+    /**
+     * The definition of a parser. It can be modified until {@link #freeze()}
+     * is called, after which it is immutable and can be shared between parsers
+     * and threads.
+     */
+    private static final class Grammar {
 
-    public final String START_SECTION; // if null, GLOBAL_PROCESSORS is used as start section
+        private final String commentPrefix;
+        private final String sectionPrefix;
+        private final String keyPrefix;
+        private final String startSectionID;
+        private final boolean SKIP_EMPTY_LINES;
+        private final HashMap<String, Section> sections = new HashMap<>(); // section -> key -> processor
+        private final Section GLOBAL_PROCESSORS = new Section(""); // processors valid in every section
+        private DefaultProcessor defaultProcessor; // to be used to process a line where no other processing applies
+        private volatile boolean frozen;
+        // available after freeze()
+        private Section startSection;
+        private LineClassifier<Section> classifier;
+        private final IdentityHashMap<KeyProcessor, Integer> oneShotIndices = new IdentityHashMap<>(); // one-shot processor -> index in ParseContext.lastOccurrences
+        private final List<KeyProcessor> oneShotProcessors = new ArrayList<>(); // by index
+        // the parse in progress in the current thread
+        private final ThreadLocal<ParseContext> context = new ThreadLocal<>();
+
+        private Grammar(String commentPrefix, String keyPrefix, String sectionPrefix, String startSectionID, boolean skipEmptyLines) {
+            this.commentPrefix = commentPrefix;
+            this.sectionPrefix = sectionPrefix;
+            this.keyPrefix = keyPrefix;
+            this.startSectionID = startSectionID;
+            this.SKIP_EMPTY_LINES = skipEmptyLines;
+        }
+
+        private void assertNotFrozen() {
+            if (frozen) {
+                throw new IllegalStateException("The parser definition cannot be changed after parsing started or after it was shared.");
+            }
+        }
+
+        /**
+         * Build the {@link LineClassifier} from the sections and key
+         * processors and prevent further changes.
+         */
+        private synchronized void freeze() {
+            if (frozen) {
+                return;
+            }
+            classifier = new LineClassifier<>(commentPrefix, sectionPrefix, keyPrefix);
+            for (Section s : sections.values()) {
+                classifier.addSection(s.getID(), s);
+                for (KeyProcessor keyProcessor : s.keyProcessors.values()) {
+                    classifier.addKeyProcessor(s.index, keyProcessor);
+                    addOneShot(keyProcessor);
+                }
+            }
+            for (KeyProcessor keyProcessor : GLOBAL_PROCESSORS.keyProcessors.values()) {
+                classifier.addKeyProcessor(GLOBAL_PROCESSORS.index, keyProcessor);
+                addOneShot(keyProcessor);
+            }
+            startSection = sections.get(startSectionID);
+            if (startSection == null) {
+                startSection = GLOBAL_PROCESSORS;
+            }
+            frozen = true;
+        }
+
+        private void addOneShot(KeyProcessor keyProcessor) {
+            if (keyProcessor.oneShot && !oneShotIndices.containsKey(keyProcessor)) {
+                oneShotIndices.put(keyProcessor, oneShotIndices.size());
+                oneShotProcessors.add(keyProcessor);
+            }
+        }
+    }
+
+    /**
+     * The state of a single parse.
+     */
+    private static final class ParseContext {
+
+        private final LinearFileParser parser; // the parser executing the parse
+        private final ListIterator<String> it;
+        private Section section; // never null
+        private final int[] lastOccurrences; // line of the last use of a one-shot processor (by index), -1 if not used
+        private final LineClassifier.Match<Section> match = new LineClassifier.Match<>();
+        private final ParseListener listener; // null if none
+        private long readNanos; // time spent reading lines, only measured with listener
+        private final ParseErrorReport errors; // null if failing on the first exception
+        private boolean skipping; // whether lines are skipped after an unknown section (when collecting errors)
+        private boolean stopped; // whether the maximum number of errors was reached
+        private final boolean stackTraces; // whether exceptions created by the parser record stack traces
+        private final boolean[] wanted; // whether a section is processed (by index), null if all are
+        private boolean skipSection; // whether the lines of the current section are skipped
+        private BatchKeyProcessor batchProcessor; // the processor of the current chunk
+        private String[] batchArgs; // the arguments of the current chunk, reused for all chunks
+        private int[] batchLines; // the line numbers of the arguments
+        private int batchCount; // the number of arguments in the current chunk
+        private final SymbolTable symbols; // null if arguments are not deduplicated
+        private Checkpoint.Handler checkpointHandler; // null if no checkpoints are created
+        private int checkpointTick; // the number of lines between checks for a checkpoint
+        private int checkpointCountdown; // the number of lines until the next check
+        private int linesSinceCheckpoint;
+        private long lastCheckpoint; // time of the last checkpoint
+        private ParseContext enclosing; // the context active in this thread before this one (of any definition), null if none
+
+        private ParseContext(LinearFileParser parser, ListIterator<String> it) {
+            this.parser = parser;
+            this.it = it;
+            this.listener = parser.listener;
+            this.stackTraces = parser.stackTraces;
+            this.errors = parser.maxErrors > 0 ? new ParseErrorReport(parser.maxErrors) : null;
+            this.wanted = parser.wantedSections();
+            this.symbols = parser.symbols;
+            this.section = parser.grammar.startSection;
+            this.lastOccurrences = new int[parser.grammar.oneShotIndices.size()];
+            Arrays.fill(lastOccurrences, -1);
+        }
+    }
+
+    private static final ThreadLocal<ParseContext> ACTIVE_CONTEXT = new ThreadLocal<>(); // the innermost parse in progress in the current thread
+
+    private static final ResourceProvider DEFAULT_RESOURCE_PROVIDER = new CachingResourceProvider(new DefaultResourceProvider());
+
+    private ResourceProvider rp = DEFAULT_RESOURCE_PROVIDER;
+    private ParseListener listener;
+    private int maxErrors;
+    private ParseErrorReport errorReport; // of the last parse
+    private boolean stackTraces = true;
+    private Set<String> wantedSections; // null if all
+    private volatile FollowLineIterator follower; // the iterator of the running follow parse, if any
+    private SymbolTable symbols; // null if arguments are not deduplicated
+    private Checkpoint.Handler checkpointHandler; // null if no checkpoints are created
+    private int checkpointLines;
+    private long checkpointNanos;
 
-    private final String commentPrefix;
-    private final String sectionPrefix;
-    private final String keyPrefix;
-    private final boolean SKIP_EMPTY_LINES;
-    private final HashMap<String, Section> sections = new HashMap<>(); // section -> key -> processor
+    public final String START_SECTION; // if null, GLOBAL_PROCESSORS is used as start section
 
-    private Section section; // is set by _parse, will then never be null
-    private ListIterator<String> it;
-    private final Section GLOBAL_PROCESSORS = new Section(""); // processors valid in every section
-    private DefaultProcessor defaultProcessor; // to be used to process a line where no other processing applies
+    private final Grammar grammar;
 
     /**
      * Create a new parser without sections. Skips lines containing whitespaces
@@ -290,17 +463,239 @@ public class LinearFileParser {
      * @param skipEmptyLines whether to skip lines containing whitespaces only
      */
     public LinearFileParser(String commentPrefix, String keyPrefix, String sectionPrefix, String startSection, boolean skipEmptyLines) {
-        this.commentPrefix = commentPrefix;
-        this.sectionPrefix = sectionPrefix;
-        this.keyPrefix = keyPrefix;
+        this.grammar = new Grammar(commentPrefix, keyPrefix, sectionPrefix, startSection, skipEmptyLines);
         this.START_SECTION = startSection;
-        this.SKIP_EMPTY_LINES = skipEmptyLines;
+    }
+
+    /**
+     * Create a new parser with the same definition (prefixes, sections, key
+     * processors and default processor) as the given parser, without having
+     * to register sections and processors again. The definition is shared and
+     * cannot be changed anymore, neither through this parser nor through the
+     * given parser. The resource provider is taken over as well.
+     *
+     * Note that the processors still belong to the given parser, i.e. methods
+     * of an enclosing instance called by them are called on that parser. The
+     * state of the parse (e.g. {@link #getCurrentLineNumber()}) is available
+     * through every parser sharing the definition. Use
+     * {@link #getActiveParser()} to access the parser executing the current
+     * parse from a processor.
+     *
+     * @param definition the parser to share the definition with
+     */
+    protected LinearFileParser(LinearFileParser definition) {
+        definition.grammar.freeze();
+        this.grammar = definition.grammar;
+        this.START_SECTION = definition.START_SECTION;
+        this.rp = definition.rp;
+        this.symbols = definition.symbols;
     }
 
     public void setResourceProvider(ResourceProvider resourceProvider) {
         this.rp = resourceProvider;
     }
 
+    /**
+     * Set whether subsequent parses with this parser stop with the first
+     * {@link ParseException} (the default) or collect exceptions and continue.
+     * When collecting, exceptions thrown by the parser
+     * ({@link UnknownKeyException}, {@link RepeatedKeyException},
+     * {@link IllegalLineException}) and by processors are added to a
+     * {@link ParseErrorReport} and parsing continues with the line after the
+     * erroneous one (or the line the processor left the iterator at). After an
+     * {@link UnknownSectionException}, all lines up to the next line specifying
+     * a section are skipped. When {@code maxErrors} exceptions are collected,
+     * parsing stops. The report is available via {@link #getErrorReport()}.
+     *
+     * @param maxErrors the maximum number of exceptions to collect or 0 to stop
+     * with the first exception
+     */
+    public void setMaxErrors(int maxErrors) {
+        if (maxErrors < 0) {
+            throw new IllegalArgumentException("maxErrors must not be negative.");
+        }
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     *
+     * @return the exceptions collected during the last parse finished with this
+     * parser or null if the parse stopped with the first exception (see
+     * {@link #setMaxErrors(int)})
+     */
+    public ParseErrorReport getErrorReport() {
+        return errorReport;
+    }
+
+    /**
+     * Set whether the exceptions created by this parser (and by
+     * {@link #newParseException(int, String)}) record a stack trace. Filling
+     * in the stack trace is the most expensive part of creating an exception,
+     * so disabling it considerably speeds up parses with many errors (e.g.
+     * when collecting errors, see {@link #setMaxErrors(int)}). The types of
+     * the exceptions do not change. The processors of this library follow
+     * this setting as well, other processors can pass
+     * {@link KeyProcessor#recordStackTraces()} to the constructors with a
+     * {@code stackTrace} parameter.
+     *
+     * @param stackTraces whether to record stack traces (default: true)
+     */
+    public void setExceptionStackTraces(boolean stackTraces) {
+        this.stackTraces = stackTraces;
+    }
+
+    /**
+     * Restrict subsequent parses with this parser to the given sections. Lines
+     * of other sections are skipped: they are only checked for whether they
+     * start with the section prefix, without classifying or processing them,
+     * and the actions on entering and leaving these sections are not executed.
+     * When parsing a file with {@code _parseStream} or {@code _parseMapped},
+     * the lines are not even read: a memory-mapped file is scanned for the
+     * next line starting with the section prefix directly in the raw bytes.
+     * The start section is always processed if it is not a registered section
+     * (see {@link #LinearFileParser(String, String, String, String)}).
+     *
+     * @param sectionIDs the IDs of the sections to process or null to process
+     * all sections
+     */
+    public void setWantedSections(Collection<String> sectionIDs) {
+        this.wantedSections = sectionIDs == null ? null : new HashSet<>(sectionIDs);
+    }
+
+    /**
+     * Convenience method for {@link #setWantedSections(Collection)}.
+     *
+     * @param sectionIDs
+     */
+    public void setWantedSections(String... sectionIDs) {
+        setWantedSections(Arrays.asList(sectionIDs));
+    }
+
+    /**
+     *
+     * @return whether a section is wanted by section index or null if all
+     * sections are wanted
+     */
+    private boolean[] wantedSections() {
+        Set<String> sectionIDs = wantedSections;
+        if (sectionIDs == null) {
+            return null;
+        }
+        boolean[] wanted = new boolean[grammar.sections.size()];
+        for (String sectionID : sectionIDs) {
+            Section section = grammar.sections.get(sectionID);
+            if (section == null) {
+                throw new IllegalArgumentException("Section \"" + sectionID + "\" does not exist.");
+            }
+            wanted[section.index] = true;
+        }
+        return wanted;
+    }
+
+    /**
+     * Deduplicate the arguments of keys with a symbol table in subsequent
+     * parses with this parser: an argument equal to one in the table is not
+     * created as a new string but taken from the table, which saves
+     * allocation and the memory retained by processors storing arguments
+     * drawn from a small vocabulary. Processors working on the line directly
+     * can use {@link #intern(CharSequence, int, int)}. Parsers created from
+     * this parser as definition (see
+     * {@link #LinearFileParser(LinearFileParser)}) share the table.
+     *
+     * @param symbols the table (e.g. {@code new SymbolTable(4096, 64)}) or null
+     * to create a new string for every argument (the default)
+     */
+    public void setSymbolTable(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     *
+     * @return the symbol table set with {@link #setSymbolTable(SymbolTable)}
+     * or null
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Get a string with the characters of a range, taken from the symbol table
+     * of this parser if set (see {@link #setSymbolTable(SymbolTable)}).
+     *
+     * @param s
+     * @param start
+     * @param end
+     * @return
+     */
+    protected String intern(CharSequence s, int start, int end) {
+        SymbolTable table = symbols;
+        return table == null ? s.subSequence(start, end).toString() : table.intern(s, start, end);
+    }
+
+    /**
+     * Create checkpoints while parsing files with subsequent parses with this
+     * parser, from which an interrupted parse can be resumed with
+     * {@link #_resume(File, Charset, Checkpoint)}. Checkpoints are created
+     * between two lines after the given number of lines or time since the
+     * last checkpoint, whichever comes first. Checkpoints are only created when
+     * parsing a memory-mapped file (e.g. with
+     * {@link #_parseMapped(File, Charset)}), as the byte offset of lines is
+     * needed, and not after an unknown section while collecting errors.
+     *
+     * The elapsed time is only checked every 1024 lines, so the overhead is a
+     * counter per line.
+     *
+     * @param handler receives the checkpoints (null to not create
+     * checkpoints)
+     * @param lines the number of lines after which a checkpoint is created (0
+     * to only create checkpoints by time)
+     * @param millis the time in milliseconds after which a checkpoint is
+     * created (0 to only create checkpoints by lines)
+     */
+    public void setCheckpoints(Checkpoint.Handler handler, int lines, long millis) {
+        if (handler != null && lines <= 0 && millis <= 0) {
+            throw new IllegalArgumentException("Lines or time has to be positive.");
+        }
+        this.checkpointHandler = handler;
+        this.checkpointLines = Math.max(0, lines);
+        this.checkpointNanos = Math.max(0, millis) * 1000000;
+    }
+
+    /**
+     * Get the state of the parser subclass to be stored in a checkpoint (see
+     * {@link #setCheckpoints(Checkpoint.Handler, int, long)}). Called by the
+     * parsing thread between two lines. Override this if the subclass keeps
+     * state which is needed to resume parsing (e.g. counters). Returns null by
+     * default.
+     *
+     * @return the state or null
+     */
+    protected byte[] getCheckpointState() {
+        return null;
+    }
+
+    /**
+     * Restore the state of the parser subclass from a checkpoint before
+     * resuming a parse (see {@link #_resume(File, Charset, Checkpoint)}). Does
+     * nothing by default.
+     *
+     * @param state the state returned by {@link #getCheckpointState()} when
+     * the checkpoint was created
+     */
+    protected void restoreCheckpointState(byte[] state) {
+    }
+
+    /**
+     * Set a listener to be informed about the progress of subsequent parses
+     * with this parser, e.g. {@link ParseStatistics}. Without a listener, no
+     * events are created and no times are measured.
+     *
+     * @param listener the listener or null to remove the listener
+     */
+    public void setParseListener(ParseListener listener) {
+        this.listener = listener;
+    }
+
     /**
      * Add a new section to the parser.
      *
@@ -315,10 +710,36 @@ public class LinearFileParser {
      * already exists
      */
     protected final void addSection(String sectionID, Action actionOnEnter, Action actionOnLeave) throws SectionAlreadyExistsException {
-        if (sections.containsKey(sectionID)) {
+        addSection(sectionID, actionOnEnter, actionOnLeave, false);
+    }
+
+    /**
+     * Add a new section to the parser which may be declared independent. The
+     * blocks of an independent section (the lines from a line specifying the
+     * section to the next line specifying a section) can be processed in
+     * parallel to other blocks by {@link #_parseParallel(List, ForkJoinPool)}.
+     * This requires that its actions and processors (including global
+     * processors used in it) can be run concurrently, do not depend on the
+     * order of blocks, do not modify the list of lines and do not move the
+     * iterator beyond the next line specifying a section.
+     *
+     * @param sectionID unique ID to identify the section and to refer to the
+     * section in the file to be parses
+     * @param actionOnEnter action to be performed before entering this section
+     * (iterator points to first line after switching to the section)
+     * @param actionOnLeave action to be performed after leaving this section
+     * (iterator points to the line which specifies a new section or the last
+     * line if all lines were processed)
+     * @param independent whether the section is independent
+     * @throws SectionAlreadyExistsException if a section with the given ID
+     * already exists
+     */
+    protected final void addSection(String sectionID, Action actionOnEnter, Action actionOnLeave, boolean independent) throws SectionAlreadyExistsException {
+        grammar.assertNotFrozen();
+        if (grammar.sections.containsKey(sectionID)) {
             throw new SectionAlreadyExistsException();
         }
-        sections.put(sectionID, new Section(sectionID, actionOnEnter, actionOnLeave));
+        grammar.sections.put(sectionID, new Section(sectionID, grammar.sections.size(), actionOnEnter, actionOnLeave, independent));
     }
 
     /**
@@ -339,7 +760,8 @@ public class LinearFileParser {
      * specified key was already added using this method
      */
     protected final void addKeyProcessor(KeyProcessor keyProcessor) throws KeyProcessorAlreadyExistsException { //TODO make final (do not allow to overwrite method)?
-        GLOBAL_PROCESSORS.addKeyProcessor(keyProcessor);
+        grammar.assertNotFrozen();
+        grammar.GLOBAL_PROCESSORS.addKeyProcessor(keyProcessor);
     }
 
     /**
@@ -356,18 +778,44 @@ public class LinearFileParser {
      * specified key was already added to apply to all sections or this section.
      */
     protected final void addKeyProcessor(String sectionID, KeyProcessor keyProcessor) throws SectionNotExistsException, KeyProcessorAlreadyExistsException {
-        if (!sections.containsKey(sectionID)) {
+        grammar.assertNotFrozen();
+        if (!grammar.sections.containsKey(sectionID)) {
             throw new SectionNotExistsException();
         }
-        if (GLOBAL_PROCESSORS.containsKey(keyProcessor.key)) {
+        if (grammar.GLOBAL_PROCESSORS.containsKey(keyProcessor.key)) {
             throw new KeyProcessorAlreadyExistsException();
         }
-        sections.get(sectionID).addKeyProcessor(keyProcessor);
-
+        grammar.sections.get(sectionID).addKeyProcessor(keyProcessor);
     }
 
     protected final void setDefaultProcessor(DefaultProcessor defaultProcessor) {
-        this.defaultProcessor = defaultProcessor;
+        grammar.assertNotFrozen();
+        grammar.defaultProcessor = defaultProcessor;
+    }
+
+    /**
+     * Get the state of the parse in progress in the current thread.
+     *
+     * @return
+     */
+    private ParseContext context() {
+        ParseContext ctx = grammar.context.get();
+        if (ctx == null) {
+            throw new IllegalStateException("No parse in progress in the current thread.");
+        }
+        return ctx;
+    }
+
+    /**
+     * Get the parser executing the parse in progress in the current thread.
+     * This is the parser whose {@code _parse} method was called, which can
+     * differ from this parser if the definition is shared (see
+     * {@link #LinearFileParser(LinearFileParser)}).
+     *
+     * @return
+     */
+    protected final LinearFileParser getActiveParser() {
+        return context().parser;
     }
 
     /**
@@ -377,7 +825,7 @@ public class LinearFileParser {
      * @return
      */
     protected int getCurrentLineNumber() {
-        return it.nextIndex();
+        return context().it.nextIndex();
     }
 
     /**
@@ -386,7 +834,7 @@ public class LinearFileParser {
      * @return
      */
     protected String getCurrentSectionID() {
-        return section.getID();
+        return context().section.getID();
     }
 
     /**
@@ -396,21 +844,54 @@ public class LinearFileParser {
      * @throws UnknownSectionException
      */
     protected void changeSection(String sectionID) throws UnknownSectionException {
-        assertSectionNotNull();
-        if (!sections.containsKey(sectionID)) { // this can still happen when a key processor calls this method
-            throw new UnknownSectionException(getCurrentLineNumber(), sectionID);
+        ParseContext ctx = context();
+        if (!grammar.sections.containsKey(sectionID)) { // this can still happen when a key processor calls this method
+            throw new UnknownSectionException(ctx.it.nextIndex(), sectionID, ctx.stackTraces);
+        }
+        changeSection(ctx, grammar.sections.get(sectionID));
+    }
+
+    private static void changeSection(ParseContext ctx, Section newSection) {
+        leaveSection(ctx);
+        ctx.section = newSection;
+        enterSection(ctx);
+    }
+
+    private static boolean isSkipped(ParseContext ctx) {
+        return ctx.wanted != null && ctx.section.index >= 0 && !ctx.wanted[ctx.section.index];
+    }
+
+    private static void enterSection(ParseContext ctx) {
+        assertSectionNotNull(ctx);
+        ctx.skipSection = isSkipped(ctx);
+        if (ctx.skipSection) {
+            return;
+        }
+        ctx.section.enter(ctx.it);
+        if (ctx.listener != null) {
+            ctx.listener.sectionEntered(ctx.section.getID(), ctx.it.previousIndex() + 1);
+        }
+    }
+
+    private static void leaveSection(ParseContext ctx) {
+        assertSectionNotNull(ctx);
+        if (ctx.skipSection) {
+            return;
+        }
+        ctx.section.leave(ctx.it);
+        if (ctx.listener != null) {
+            ctx.listener.sectionLeft(ctx.section.getID(), ctx.it.previousIndex() + 1);
         }
-        section.leave(it);
-        section = sections.get(sectionID);
-        assertSectionNotNull();
-        section.enter(it);
     }
 
     /**
      * Convenience method for {@link #_parse(java.util.List)}. It assumes UTF-8
-     * encoding for the data provided by the input stream.
+     * encoding for the data provided by the input stream. Lines consisting of
+     * ASCII characters only are converted without a decoder. Gzip-compressed
+     * input is decompressed transparently.
      *
-     * @param inputStream an input stream providing the lines to be parsed
+     * @param inputStream an input stream providing the lines to be parsed (is
+     * closed after reading)
      * @throws FileNotFoundException
      * @throws IOException
      * @throws UnknownSectionException
@@ -420,7 +901,27 @@ public class LinearFileParser {
      * @throws ParseException
      */
     protected void _parse(InputStream inputStream) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
-        _parse(new InputStreamReader(inputStream, "UTF-8"));
+        List<String> lines = new ArrayList<>();
+        Utf8LineIterator lineIterator = openUtf8(inputStream);
+        try {
+            while (lineIterator.hasNext()) {
+                lines.add(lineIterator.next());
+            }
+        } catch (StreamLineIterator.ReadFailure ex) {
+            throw ex.getCause();
+        } finally {
+            lineIterator.close();
+        }
+        _parse(lines);
+    }
+
+    private static Utf8LineIterator openUtf8(InputStream inputStream) throws IOException {
+        try {
+            return new Utf8LineIterator(Utf8LineIterator.decompress(inputStream));
+        } catch (IOException | RuntimeException ex) {
+            inputStream.close();
+            throw ex;
+        }
     }
 
     /**
@@ -490,100 +991,1419 @@ public class LinearFileParser {
      * thrown by a key processor
      */
     protected void _parse(List<String> lines) throws UnknownSectionException, UnknownKeyException, RepeatedKeyException, IllegalLineException, ParseException {
-        it = lines.listIterator();
-        String line;
-        section = sections.get(START_SECTION);
-        if (section == null) {
-            section = GLOBAL_PROCESSORS;
-        }
-        assertSectionNotNull();
-        section.enter(it);
+        parseLines(lines.listIterator());
+    }
 
-        // Any ParseException thrown in this block will be set up with the given ResourceProvider
+    /**
+     * Parse lines while reading them from a reader. In contrast to
+     * {@link #_parse(java.io.InputStreamReader)}, lines are dispatched to the
+     * processors as soon as they are read and only the last {@code window}
+     * lines are kept in memory. The iterator passed to processors supports
+     * going back with {@link ListIterator#previous()} as long as the line is
+     * still inside the window, but does not support adding or removing lines.
+     * Make sure to specify the correct input encoding.
+     *
+     * @param reader a reader providing the lines to be parsed (is closed after
+     * parsing)
+     * @param window the maximum number of lines kept in memory (at least 2)
+     * @throws IOException
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    protected void _parseStream(Reader reader, int window) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        parseStream(new StreamLineIterator(new BufferedReader(reader), window));
+    }
+
+    /**
+     * Parse a file which is continuously appended to (like a log) and keep
+     * following it. After the end of the file is reached, the parser waits for
+     * appended data and processes new lines as soon as they are complete, in
+     * the same parse: the current section and the state of one-shot keys are
+     * kept. Appended data is detected by polling with a delay growing from one
+     * millisecond up to {@code maxDelay} while no data arrives. A truncated
+     * file is read again from the beginning, a rotated file (the path refers
+     * to a new file) is read to its end before continuing with the new file.
+     *
+     * This method returns when {@link #stopFollowing()} is called or the
+     * thread is interrupted while waiting (then with the interrupt status
+     * set), which ends the input. Otherwise it only returns with
+     * an exception - set {@link #setMaxErrors(int)} to continue following
+     * after errors.
+     *
+     * @param file the file to follow
+     * @param charset the charset of the file, which must encode ASCII
+     * characters as single bytes of the same value (as UTF-8 and ISO-8859-1
+     * do)
+     * @param maxDelay the maximum delay between polls in milliseconds (e.g.
+     * {@link FollowLineIterator#DEFAULT_MAX_DELAY})
+     * @throws IOException
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    protected void _follow(Path file, Charset charset, long maxDelay) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        FollowLineIterator lineIterator = new FollowLineIterator(file, charset, maxDelay, StreamLineIterator.DEFAULT_WINDOW);
+        follower = lineIterator;
         try {
-            while (it.hasNext()) {
-                line = it.next();
-                if (SKIP_EMPTY_LINES && line.trim().isEmpty()) {
-                    // skip this line
-                } else if (commentPrefix != null && line.startsWith(commentPrefix)) {
-                    // skip this line
-                } else if (sectionPrefix != null && line.startsWith(sectionPrefix)) {
-                    String sectionID = line.substring(sectionPrefix.length());
-                    if (sections.containsKey(sectionID)) {
-                        changeSection(sectionID);
-                    } else if (sectionPrefix.equals(keyPrefix)) {
-                        // if sectionPrefix and keyPrefix are equal, we could also have a regular key here, so check for keys next
-                        parseKey(line, it);
-                    } else {
-                        throw new UnknownSectionException(it.previousIndex(), sectionID);
-                    }
-                } else if (line.startsWith(keyPrefix)) {
-                    parseKey(line, it);
-                } else {
-                    if (defaultProcessor == null || !defaultProcessor.run(line, it)) { // NOTE: 'run' can also throw IllegalLineException and ParseException
-                        throw new IllegalLineException(getCurrentLineNumber());
-                    }
-                }
-            }
-        } catch (ParseException ex) {
-            ex.setResourceProvider(rp);
-            throw ex;
+            parseStream(lineIterator);
+        } finally {
+            follower = null;
         }
-
-        assertSectionNotNull();
-        section.leave(it);
     }
 
-    private void parseKey(String line, ListIterator<String> it) throws UnknownKeyException, RepeatedKeyException, ParseException {
-        String keyArg = line.substring(keyPrefix.length()); // key with argument
-        int endKey = keyArg.indexOf(" ");
-        String key = keyArg;
-        String arg = null;
-        if (endKey != -1) {
-            key = keyArg.substring(0, endKey);
-            int startArg = endKey + 1;
-            if (startArg < keyArg.length()) {
-                arg = keyArg.substring(startArg);
-            }
-        }
-        assertSectionNotNull();
-        if (section.containsKey(key)) {
-            section.process(key, arg, it);
-        } else if (GLOBAL_PROCESSORS.containsKey(key)) {
-            GLOBAL_PROCESSORS.process(key, arg, it);
-        } else {
-            throw new UnknownKeyException(key, getCurrentLineNumber(), getCurrentSectionID());
+    /**
+     * Stop a parse started with {@link #_follow(Path, Charset, long)}: no
+     * further lines are processed after the current one. Can be called from
+     * any thread, including key processors of the parse.
+     */
+    protected void stopFollowing() {
+        FollowLineIterator lineIterator = follower;
+        if (lineIterator != null) {
+            lineIterator.stop();
         }
     }
 
     /**
-     * Initialize a {@link ParseException} with required information such that {@link ParseException#getMessage()
-     * } can be used. This is required when manually throwing
-     * {@link ParseException}s to the user of {@link LinearFileParser}.
+     * Same as {@link #_parseStream(java.io.Reader, int)}, but lines are read
+     * by a separate thread so that reading (e.g. from a slow file system) and
+     * decoding overlap with processing. The reader thread passes batches of
+     * lines through a bounded buffer and waits while it is full.
      *
-     * @param ex
-     * @return
+     * @param reader a reader providing the lines to be parsed (is closed by
+     * the reader thread when it ends)
+     * @param batchSize the number of lines per batch (e.g.
+     * {@link PipelinedLineIterator#DEFAULT_BATCH_SIZE})
+     * @param depth the number of batches the buffer can hold (e.g.
+     * {@link PipelinedLineIterator#DEFAULT_DEPTH})
+     * @param statistics receives the timings of both stages (may be null)
+     * @throws IOException if reading fails, also wrapping an unchecked
+     * exception or error of the reader thread
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
      */
-    protected ParseException setupException(ParseException ex) {
-        ex.setResourceProvider(rp);
-        return ex;
+    protected void _parsePipelined(Reader reader, int batchSize, int depth, PipelineStatistics statistics) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        parseStream(new PipelinedLineIterator(bufferedReader, batchSize, depth, StreamLineIterator.DEFAULT_WINDOW, statistics));
+    }
+
+    private void parseStream(StreamLineIterator lineIterator) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        try {
+            parseLines(lineIterator);
+        } catch (StreamLineIterator.ReadFailure ex) {
+            throw ex.getCause();
+        } finally {
+            lineIterator.close();
+        }
     }
 
     /**
-     * Create a {@link ParseException} which is initialized by this
-     * {@link LinearFileParser}. Equivalent to calling {@link #setupException(felixwiemuth.linearfileparser.ParseException)
-     * } on an instance of {@link ParseException}.
+     * Same as {@link #_parseStream(java.io.Reader, int)} with a window of
+     * {@link StreamLineIterator#DEFAULT_WINDOW} lines.
      *
-     * @param line
-     * @param msg
-     * @return
+     * @param reader a reader providing the lines to be parsed (is closed after
+     * parsing)
+     * @throws IOException
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
      */
-    protected ParseException newParseException(int line, String msg) {
-        return setupException(new ParseException(line, msg));
+    protected void _parseStream(Reader reader) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        _parseStream(reader, StreamLineIterator.DEFAULT_WINDOW);
     }
 
-    private void assertSectionNotNull() {
-        if (section == null) {
+    /**
+     * Same as {@link #_parseStream(java.io.Reader)}, assuming UTF-8 encoding
+     * for the data provided by the input stream. Lines consisting of ASCII
+     * characters only are converted without a decoder. Gzip-compressed input
+     * is decompressed transparently.
+     *
+     * @param inputStream an input stream providing the lines to be parsed (is
+     * closed after parsing)
+     * @throws IOException
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    protected void _parseStream(InputStream inputStream) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        parseStream(openUtf8(inputStream));
+    }
+
+    /**
+     * Parse lines read from a file channel by mapping the file into memory.
+     * Lines are located directly in the mapped bytes and lines consisting of
+     * ASCII characters only are not decoded unless a processor needs them as
+     * strings (comments and empty lines are never decoded). The file is mapped
+     * in windows, so files larger than 2 GB are supported. Otherwise this
+     * behaves like {@link #_parseStream(java.io.Reader)}, reading from the
+     * current position of the channel.
+     *
+     * @param channel the channel to read from (is closed after parsing)
+     * @param charset the charset of the file which must be ASCII-compatible
+     * (like UTF-8 or ISO-8859-1)
+     * @throws IOException
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    protected void _parse(FileChannel channel, Charset charset) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        MappedLineIterator lineIterator;
+        try {
+            lineIterator = new MappedLineIterator(channel, charset);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        parseStream(lineIterator);
+    }
+
+    /**
+     * Convenience method for
+     * {@link #_parse(java.nio.channels.FileChannel, java.nio.charset.Charset)}.
+     *
+     * @param file the file to be parsed
+     * @param charset the charset of the file which must be ASCII-compatible
+     * @throws FileNotFoundException
+     * @throws IOException
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    protected void _parseMapped(File file, Charset charset) throws FileNotFoundException, IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        _parse(new FileInputStream(file).getChannel(), charset);
+    }
+
+    /**
+     * Resume parsing a memory-mapped file from a checkpoint created while
+     * parsing it before (see
+     * {@link #setCheckpoints(Checkpoint.Handler, int, long)}). Reading starts
+     * directly at the byte offset of the checkpoint, in the section of the
+     * checkpoint (without executing its enter action again) and with the
+     * one-shot keys used before the checkpoint. The state of the subclass is
+     * restored with {@link #restoreCheckpointState(byte[])} first. The result
+     * is the same as if the parse had not been interrupted, provided that
+     * processors keep all their state in the subclass state.
+     *
+     * @param file the file to be parsed
+     * @param charset the charset of the file which must be ASCII-compatible
+     * @param checkpoint a checkpoint created by a parser with the same
+     * definition for the same file
+     * @throws IOException
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    protected void _resume(File file, Charset charset, Checkpoint checkpoint) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        grammar.freeze();
+        if (!grammar.sections.containsKey(checkpoint.getSectionID()) || checkpoint.getOneShotLines().length != grammar.oneShotIndices.size()) {
+            throw new IllegalArgumentException("The checkpoint does not match the definition of the parser.");
+        }
+        FileChannel channel = new FileInputStream(file).getChannel();
+        MappedLineIterator lineIterator;
+        try {
+            if (checkpoint.getOffset() > channel.size()) {
+                throw new IllegalArgumentException("The checkpoint does not match the file.");
+            }
+            channel.position(checkpoint.getOffset());
+            lineIterator = new MappedLineIterator(channel, charset);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        lineIterator.setFirstIndex(checkpoint.getLine());
+        restoreCheckpointState(checkpoint.getState());
+        try {
+            parseLines(lineIterator, checkpoint);
+        } catch (StreamLineIterator.ReadFailure ex) {
+            throw ex.getCause();
+        } finally {
+            lineIterator.close();
+        }
+    }
+
+    /**
+     * Same as {@link #_parseMapped(java.io.File, java.nio.charset.Charset)}
+     * using UTF-8.
+     *
+     * @param file the file to be parsed
+     * @throws FileNotFoundException
+     * @throws IOException
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    protected void _parseMapped(File file) throws FileNotFoundException, IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        _parseMapped(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a {@link LineIndex} of a file, recording the positions of all
+     * lines specifying a section or a key (known or not) in a single pass
+     * without processing any lines. The index is stored in the given file
+     * (atomically replacing an existing index). The parser definition is
+     * frozen.
+     *
+     * @param file the file to index
+     * @param charset the charset of the file which must be ASCII-compatible
+     * @param indexFile the file to store the index in
+     * @return the index
+     * @throws IOException
+     */
+    protected LineIndex _index(File file, Charset charset, Path indexFile) throws IOException {
+        grammar.freeze();
+        LineIndex.Builder builder = new LineIndex.Builder();
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            MappedLineIterator lines = new MappedLineIterator(channel, charset);
+            LineClassifier.Match<Section> match = new LineClassifier.Match<>();
+            Section section = grammar.startSection;
+            for (int i = 0;; i++) {
+                long offset = lines.position();
+                CharSequence line = lines.readLine();
+                if (line == null) {
+                    break;
+                }
+                if (grammar.SKIP_EMPTY_LINES && isBlank(line)) {
+                    continue;
+                }
+                switch (grammar.classifier.classify(line, section.index, match)) {
+                    case LineClassifier.SECTION:
+                        section = match.section;
+                        builder.addSection(section.getID(), i, offset);
+                        break;
+                    case LineClassifier.KEY:
+                        builder.addKey(match.processor.key, i, offset);
+                        break;
+                    case LineClassifier.UNKNOWN_KEY:
+                        builder.addKey(line.subSequence(grammar.keyPrefix.length(), match.keyEnd).toString(), i, offset);
+                        break;
+                    default:
+                }
+            }
+        }
+        builder.write(indexFile, file.toPath(), charset);
+        return LineIndex.open(indexFile);
+    }
+
+    /**
+     * Parse a single block of a section, starting at the line specifying the
+     * section and ending before the line specifying the next section, as
+     * recorded in the index. Only this part of the file is read. The block is
+     * processed as by {@link #_parse(List)}, including the actions on entering
+     * and leaving the section, with line numbers referring to the whole file.
+     *
+     * @param file the indexed file
+     * @param index the index of the file
+     * @param sectionID the section to parse
+     * @param occurrence which block of the section to parse, starting with 0
+     * @throws IllegalArgumentException if the index does not match the file or
+     * the section does not exist
+     * @throws IndexOutOfBoundsException if the occurrence does not exist
+     * @throws IOException
+     * @throws IllegalLineException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    protected void _parseSection(File file, LineIndex index, String sectionID, int occurrence) throws IOException, IllegalLineException, UnknownKeyException, RepeatedKeyException, UnknownSectionException, ParseException {
+        grammar.freeze();
+        Section section = grammar.sections.get(sectionID);
+        if (section == null) {
+            throw new IllegalArgumentException("Section \"" + sectionID + "\" does not exist.");
+        }
+        int line = index.getSectionLine(sectionID, occurrence);
+        int position = index.sequencePosition(sectionID, occurrence);
+        int end = position + 1 < index.getSequenceCount() ? index.sequenceLine(position + 1) : Integer.MAX_VALUE;
+        parseIndexed(file, index, index.getSectionOffset(sectionID, occurrence), line, section, end, true);
+    }
+
+    /**
+     * Process a single line with a key, as recorded in the index, in the
+     * section the line belongs to. Only this part of the file is read. The
+     * processor may read further lines with the iterator. Actions of the
+     * section are not executed.
+     *
+     * @param file the indexed file
+     * @param index the index of the file
+     * @param key the key
+     * @param occurrence which line with the key to process, starting with 0
+     * @throws IllegalArgumentException if the index does not match the file or
+     * the section of the line does not exist
+     * @throws IndexOutOfBoundsException if the occurrence does not exist
+     * @throws IOException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws ParseException
+     */
+    protected void _parseKey(File file, LineIndex index, String key, int occurrence) throws IOException, UnknownKeyException, RepeatedKeyException, ParseException {
+        grammar.freeze();
+        int line = index.getKeyLine(key, occurrence);
+        int position = index.sectionBefore(line);
+        Section section = position == -1 ? grammar.startSection : grammar.sections.get(index.sequenceSectionID(position));
+        if (section == null) {
+            throw new IllegalArgumentException("Section \"" + index.sequenceSectionID(position) + "\" does not exist.");
+        }
+        parseIndexed(file, index, index.getKeyOffset(key, occurrence), line, section, line + 1, false);
+    }
+
+    /**
+     * Parse the lines of an indexed file starting at the given offset until
+     * the line with index {@code end} would be processed next.
+     *
+     * @param block whether the first line specifies the section and the
+     * actions of the section are executed
+     */
+    private void parseIndexed(File file, LineIndex index, long offset, int line, Section section, int end, boolean block) throws IOException, ParseException {
+        if (!index.isValidFor(file.toPath())) {
+            throw new IllegalArgumentException("The index does not match the file.");
+        }
+        FileChannel channel = new FileInputStream(file).getChannel();
+        MappedLineIterator lineIterator;
+        try {
+            channel.position(offset);
+            lineIterator = new MappedLineIterator(channel, index.getCharset());
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        lineIterator.setFirstIndex(line);
+        ParseContext ctx = new ParseContext(this, lineIterator);
+        ctx.section = section;
+        ParseContext outer = enterContext(ctx);
+        try {
+            if (block) {
+                lineIterator.next(); // the line specifying the section
+                enterSection(ctx);
+            }
+            parseLines(ctx, end);
+            if (block && !ctx.stopped) {
+                if (lineIterator.nextIndex() == end && lineIterator.hasNext()) {
+                    lineIterator.next(); // the line specifying the next section, as when processing all lines
+                }
+                leaveSection(ctx);
+            }
+            errorReport = ctx.errors;
+        } catch (StreamLineIterator.ReadFailure ex) {
+            throw ex.getCause();
+        } finally {
+            exitContext(ctx, outer);
+            lineIterator.close();
+        }
+    }
+
+    private void parseLines(ListIterator<String> lineIterator) throws UnknownSectionException, UnknownKeyException, RepeatedKeyException, IllegalLineException, ParseException {
+        parseLines(lineIterator, null);
+    }
+
+    /**
+     *
+     * @param lineIterator
+     * @param checkpoint the checkpoint to resume from, null to start a new
+     * parse
+     */
+    private void parseLines(ListIterator<String> lineIterator, Checkpoint checkpoint) throws UnknownSectionException, UnknownKeyException, RepeatedKeyException, IllegalLineException, ParseException {
+        grammar.freeze();
+        ParseContext ctx = new ParseContext(this, lineIterator);
+        if (checkpointHandler != null && lineIterator instanceof StreamLineIterator && ((StreamLineIterator) lineIterator).position() >= 0) {
+            ctx.checkpointHandler = checkpointHandler;
+            ctx.checkpointTick = checkpointNanos > 0 ? (checkpointLines > 0 ? Math.min(checkpointLines, 1024) : 1024) : checkpointLines;
+            ctx.checkpointCountdown = ctx.checkpointTick + 1; // counted down before reading each line, including the first
+            ctx.lastCheckpoint = System.nanoTime();
+        }
+        ParseContext outer = enterContext(ctx);
+        long start = 0;
+        if (listener != null) {
+            listener.parseStarted();
+            start = System.nanoTime();
+        }
+        try {
+            if (checkpoint == null) {
+                enterSection(ctx);
+            } else {
+                ctx.section = grammar.sections.get(checkpoint.getSectionID());
+                ctx.skipSection = isSkipped(ctx);
+                System.arraycopy(checkpoint.getOneShotLines(), 0, ctx.lastOccurrences, 0, ctx.lastOccurrences.length);
+            }
+            parseLines(ctx, Integer.MAX_VALUE);
+            if (!ctx.stopped) {
+                leaveSection(ctx);
+            }
+            errorReport = ctx.errors;
+            if (listener != null) {
+                listener.parseFinished(ctx.readNanos, System.nanoTime() - start - ctx.readNanos);
+            }
+        } finally {
+            exitContext(ctx, outer);
+        }
+    }
+
+    /**
+     * Make the given context the context of the current thread, both for this
+     * definition and for all parsers (see
+     * {@link KeyProcessor#recordStackTraces()}).
+     *
+     * @param ctx
+     * @return the previous context of the current thread (a parse of the same
+     * definition in progress in this thread) or null
+     */
+    private ParseContext enterContext(ParseContext ctx) {
+        ParseContext outer = grammar.context.get();
+        grammar.context.set(ctx);
+        ctx.enclosing = ACTIVE_CONTEXT.get();
+        ACTIVE_CONTEXT.set(ctx);
+        return outer;
+    }
+
+    private void exitContext(ParseContext ctx, ParseContext outer) {
+        if (outer == null) {
+            grammar.context.remove();
+        } else {
+            grammar.context.set(outer);
+        }
+        if (ctx.enclosing == null) {
+            ACTIVE_CONTEXT.remove();
+        } else {
+            ACTIVE_CONTEXT.set(ctx.enclosing);
+        }
+    }
+
+    /**
+     * Process lines until the end of input or until the line with index
+     * {@code end} would be processed next.
+     */
+    private void parseLines(ParseContext ctx, int end) throws UnknownSectionException, UnknownKeyException, RepeatedKeyException, IllegalLineException, ParseException {
+        final Grammar g = grammar;
+        final ListIterator<String> it = ctx.it;
+        final LineClassifier.Match<Section> match = ctx.match;
+        final ParseListener listener = ctx.listener;
+        LineViewIterator views = it instanceof LineViewIterator ? (LineViewIterator) it : null;
+        CharSequence line;
+        long readStart = 0;
+
+        // Any ParseException thrown in this block will be set up with the given ResourceProvider
+        try {
+            while (true) {
+                if (ctx.checkpointHandler != null && --ctx.checkpointCountdown <= 0) {
+                    try {
+                        checkpointTick(ctx);
+                    } catch (ParseException ex) {
+                        if (!collect(ctx, ex)) {
+                            return;
+                        }
+                    }
+                }
+                if (listener != null) {
+                    readStart = System.nanoTime();
+                }
+                if (ctx.skipSection) {
+                    skipLines(it, end);
+                }
+                if (!it.hasNext() || it.nextIndex() >= end) {
+                    break;
+                }
+                line = views != null ? views.nextView() : it.next();
+                if (listener != null) {
+                    ctx.readNanos += System.nanoTime() - readStart;
+                }
+                if (g.SKIP_EMPTY_LINES && isBlank(line)) {
+                    if (listener != null) {
+                        listener.lineClassified(ctx.section.getID(), it.nextIndex(), ParseListener.LineType.EMPTY);
+                    }
+                    continue;
+                }
+                int type = g.classifier.classify(line, ctx.section.index, match);
+                if (listener != null) {
+                    listener.lineClassified(ctx.section.getID(), it.nextIndex(), LINE_TYPES[type]);
+                }
+                if (ctx.skipping || ctx.skipSection) {
+                    if (type != LineClassifier.SECTION && type != LineClassifier.UNKNOWN_SECTION) {
+                        continue; // e.g. a key when the section prefix equals the key prefix
+                    }
+                    ctx.skipping = false;
+                }
+                if (ctx.batchCount > 0 && (type == LineClassifier.KEY ? match.processor != ctx.batchProcessor : type != LineClassifier.COMMENT && type != LineClassifier.UNKNOWN_KEY)) {
+                    // pass on the chunk before processing the line, which is processed even if the batch processor fails
+                    try {
+                        flushBatch(ctx);
+                    } catch (ParseException ex) {
+                        if (!collect(ctx, ex)) {
+                            return;
+                        }
+                    }
+                }
+                try {
+                    switch (type) {
+                        case LineClassifier.COMMENT:
+                            break;
+                        case LineClassifier.SECTION:
+                            changeSection(ctx, match.section);
+                            break;
+                        case LineClassifier.UNKNOWN_SECTION:
+                            ctx.skipping = ctx.errors != null;
+                            throw new UnknownSectionException(it.previousIndex(), line.subSequence(g.sectionPrefix.length(), line.length()).toString(), ctx.stackTraces);
+                        case LineClassifier.KEY:
+                            processKey(ctx, match.processor, line, match.keyEnd + 1);
+                            break;
+                        case LineClassifier.UNKNOWN_KEY:
+                            throw new UnknownKeyException(ctx.section.getID(), it.nextIndex(), line.subSequence(g.keyPrefix.length(), match.keyEnd).toString(), ctx.stackTraces);
+                        default:
+                            processDefault(ctx, line);
+                    }
+                } catch (ParseException ex) {
+                    if (!collect(ctx, ex)) {
+                        return;
+                    }
+                }
+            }
+            try {
+                flushBatch(ctx);
+            } catch (ParseException ex) {
+                collect(ctx, ex);
+            }
+        } catch (ParseException ex) {
+            ex.setResourceProvider(rp);
+            if (listener != null) {
+                listener.exceptionRaised(ex);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Create a checkpoint if enough lines or time have passed since the last
+     * one.
+     */
+    private static void checkpointTick(ParseContext ctx) throws ParseException {
+        ctx.checkpointCountdown = ctx.checkpointTick;
+        ctx.linesSinceCheckpoint += ctx.checkpointTick;
+        LinearFileParser parser = ctx.parser;
+        long now = parser.checkpointNanos > 0 ? System.nanoTime() : 0;
+        if (!(parser.checkpointLines > 0 && ctx.linesSinceCheckpoint >= parser.checkpointLines
+                || parser.checkpointNanos > 0 && now - ctx.lastCheckpoint >= parser.checkpointNanos)) {
+            return;
+        }
+        if (ctx.skipping) { // the skipping state is not part of a checkpoint
+            return;
+        }
+        flushBatch(ctx); // the arguments collected are not part of a checkpoint
+        ctx.linesSinceCheckpoint = 0;
+        ctx.lastCheckpoint = parser.checkpointNanos > 0 ? now : 0;
+        ctx.checkpointHandler.checkpoint(new Checkpoint(((StreamLineIterator) ctx.it).nextPosition(), ctx.it.nextIndex(), ctx.section.getID(), ctx.lastOccurrences.clone(), parser.getCheckpointState()));
+    }
+
+    /**
+     * Add an exception to the error report when collecting errors.
+     *
+     * @return whether parsing continues (false if the maximum number of errors
+     * is reached)
+     * @throws ParseException the given exception if errors are not collected
+     */
+    private boolean collect(ParseContext ctx, ParseException ex) throws ParseException {
+        if (ctx.errors == null) {
+            throw ex;
+        }
+        ex.setResourceProvider(rp);
+        if (ctx.listener != null) {
+            ctx.listener.exceptionRaised(ex);
+        }
+        if (!ctx.errors.add(ex)) {
+            ctx.stopped = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Skip lines until the next line starting with the section prefix (which
+     * is not skipped) or until the line with index {@code end} would be read
+     * next.
+     */
+    private void skipLines(ListIterator<String> it, int end) {
+        String prefix = grammar.sectionPrefix;
+        if (it instanceof StreamLineIterator) {
+            ((StreamLineIterator) it).skipLines(prefix, end);
+            return;
+        }
+        while (it.hasNext() && it.nextIndex() < end) {
+            String line = it.next();
+            if (prefix != null && line.startsWith(prefix)) {
+                it.previous();
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@link ParseListener.LineType} by {@link LineClassifier} constant.
+     */
+    private static final ParseListener.LineType[] LINE_TYPES = {
+        ParseListener.LineType.COMMENT,
+        ParseListener.LineType.SECTION,
+        ParseListener.LineType.SECTION,
+        ParseListener.LineType.KEY,
+        ParseListener.LineType.KEY,
+        ParseListener.LineType.OTHER
+    };
+
+    private void processDefault(ParseContext ctx, CharSequence line) throws IllegalLineException, ParseException {
+        DefaultProcessor defaultProcessor = grammar.defaultProcessor;
+        if (defaultProcessor == null) {
+            throw new IllegalLineException(ctx.it.nextIndex(), null, ctx.stackTraces);
+        }
+        long start = ctx.listener != null ? System.nanoTime() : 0;
+        String sectionID = ctx.section.getID(); // the processor might change the section
+        if (!defaultProcessor.run(line.toString(), ctx.it)) { // NOTE: 'run' can also throw IllegalLineException and ParseException
+            throw new IllegalLineException(ctx.it.nextIndex(), null, ctx.stackTraces);
+        }
+        if (ctx.listener != null) {
+            ctx.listener.defaultProcessed(sectionID, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * A range of lines belonging to one section, processed by
+     * {@link #_parseParallel(List, ForkJoinPool)} and
+     * {@link #_parseIncremental(List, Outline, List)}.
+     */
+    private static final class Block {
+
+        private final Section section;
+        private final int start; // index of the first line after the line specifying the section
+        private final int end; // index of the line specifying the next section or the number of lines
+        private ParseContext ctx; // null if the block was processed by a previous parse
+        private ParseException exception;
+        private int[] occurrences; // lines of the first uses of one-shot processors (see ParseContext.lastOccurrences)
+
+        private Block(Section section, int start, int end) {
+            this.section = section;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Index of the line specifying the section of this block or of the
+         * first line if the block starts with the first line.
+         */
+        private int first() {
+            return Math.max(0, start - 1);
+        }
+
+        /**
+         * A copy of a processed block for an {@link Outline}, moved by
+         * {@code delta} lines.
+         */
+        private Block moved(int delta) {
+            Block block = new Block(section, start + delta, end + delta);
+            block.occurrences = occurrences.clone();
+            for (int i = 0; i < block.occurrences.length; i++) {
+                if (block.occurrences[i] != -1) {
+                    block.occurrences[i] += delta;
+                }
+            }
+            return block;
+        }
+    }
+
+    /**
+     * Parse a list of lines, processing blocks of independent sections (see
+     * {@link #addSection(String, Action, Action, boolean)}) in parallel. The
+     * lines are first scanned for lines specifying a section, which divide the
+     * lines into blocks. Blocks of independent sections are then processed on
+     * the given pool while the other blocks are processed one after another in
+     * the current thread. Each block is processed as by
+     * {@link #_parse(List)}, including the actions on entering and leaving the
+     * section.
+     *
+     * Exceptions and repeated one-shot keys are reported as if the blocks were
+     * processed in order: the exception occurring at the first line is thrown
+     * (though later blocks may have been processed already).
+     *
+     * @param lines
+     * @param pool the pool to process independent blocks in
+     * @throws UnknownSectionException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws IllegalLineException
+     * @throws ParseException
+     */
+    protected void _parseParallel(final List<String> lines, ForkJoinPool pool) throws UnknownSectionException, UnknownKeyException, RepeatedKeyException, IllegalLineException, ParseException {
+        grammar.freeze();
+        long start = 0;
+        if (listener != null) {
+            listener.parseStarted();
+            start = System.nanoTime();
+        }
+        List<Block> blocks = scanBlocks(lines);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (final Block block : blocks) {
+            if (block.section.independent) {
+                tasks.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        parseBlock(lines, block);
+                    }
+                }));
+            }
+        }
+        for (Block block : blocks) {
+            if (!block.section.independent) {
+                parseBlock(lines, block);
+            }
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        reportBlockErrors(blocks);
+        if (listener != null) {
+            listener.parseFinished(0, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Report the errors of processed blocks as if the blocks were processed in
+     * order: collect them if collecting errors, otherwise throw the exception
+     * occurring at the first line.
+     */
+    private void reportBlockErrors(List<Block> blocks) throws ParseException {
+        if (maxErrors > 0) {
+            collectBlockErrors(blocks);
+            return;
+        }
+        int[] firstOccurrences = new int[grammar.oneShotProcessors.size()];
+        Arrays.fill(firstOccurrences, -1);
+        for (Block block : blocks) {
+            ParseException ex = block.exception;
+            int[] occurrences = block.occurrences;
+            for (int i = 0; i < occurrences.length; i++) {
+                if (occurrences[i] != -1 && firstOccurrences[i] != -1 && (ex == null || occurrences[i] < ex.getLine())) {
+                    ex = setupException(new RepeatedKeyException(occurrences[i], grammar.oneShotProcessors.get(i).key, firstOccurrences[i], stackTraces));
+                }
+            }
+            if (ex != null) {
+                if (listener != null && ex != block.exception) {
+                    listener.exceptionRaised(ex);
+                }
+                throw ex;
+            }
+            for (int i = 0; i < occurrences.length; i++) {
+                if (firstOccurrences[i] == -1) {
+                    firstOccurrences[i] = occurrences[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the errors collected in the blocks, adding one-shot keys repeated
+     * across blocks, into {@link #errorReport}.
+     */
+    private void collectBlockErrors(List<Block> blocks) {
+        List<ParseException> errors = new ArrayList<>();
+        int[] firstOccurrences = new int[grammar.oneShotProcessors.size()];
+        Arrays.fill(firstOccurrences, -1);
+        for (Block block : blocks) {
+            int[] occurrences = block.occurrences;
+            for (ParseException ex : block.ctx.errors.getErrors()) {
+                errors.add(withFirstOccurrence(ex, occurrences, firstOccurrences));
+            }
+            for (int i = 0; i < occurrences.length; i++) {
+                if (occurrences[i] == -1) {
+                    continue;
+                }
+                if (firstOccurrences[i] == -1) {
+                    firstOccurrences[i] = occurrences[i];
+                } else {
+                    ParseException ex = setupException(new RepeatedKeyException(occurrences[i], grammar.oneShotProcessors.get(i).key, firstOccurrences[i], stackTraces));
+                    if (listener != null) {
+                        listener.exceptionRaised(ex);
+                    }
+                    errors.add(ex);
+                }
+            }
+            if (block.ctx.stopped) {
+                break; // later blocks cannot contain any of the first errors
+            }
+        }
+        Collections.sort(errors, new Comparator<ParseException>() {
+            @Override
+            public int compare(ParseException e1, ParseException e2) {
+                return Integer.compare(e1.getLine(), e2.getLine());
+            }
+        });
+        ParseErrorReport report = new ParseErrorReport(maxErrors);
+        for (ParseException ex : errors) {
+            if (!report.add(ex)) {
+                break;
+            }
+        }
+        errorReport = report;
+    }
+
+    /**
+     * If the exception reports a one-shot key repeated inside a block which was
+     * already used in a previous block, refer to the first use instead.
+     */
+    private ParseException withFirstOccurrence(ParseException ex, int[] occurrences, int[] firstOccurrences) {
+        if (ex instanceof RepeatedKeyException) {
+            RepeatedKeyException rex = (RepeatedKeyException) ex;
+            for (int i = 0; i < occurrences.length; i++) {
+                if (occurrences[i] == rex.getFirstOccurrence() && firstOccurrences[i] != -1 && grammar.oneShotProcessors.get(i).key.equals(rex.getKey())) {
+                    return setupException(new RepeatedKeyException(rex.getLine(), rex.getKey(), firstOccurrences[i], stackTraces));
+                }
+            }
+        }
+        return ex;
+    }
+
+    /**
+     * The division of the lines of a parse into blocks of sections, returned by
+     * {@link #_parseIncremental(List, Outline, List)} to be passed to the next
+     * incremental parse. A block starts with the line specifying its section
+     * (except the first block, which starts with the first line) and ends
+     * before the line specifying the next section.
+     */
+    public static final class Outline {
+
+        private final List<Block> blocks;
+        private final int lineCount;
+
+        private Outline(List<Block> blocks, int lineCount) {
+            this.blocks = blocks;
+            this.lineCount = lineCount;
+        }
+
+        public int getBlockCount() {
+            return blocks.size();
+        }
+
+        public String getSectionID(int block) {
+            return blocks.get(block).section.getID();
+        }
+
+        /**
+         *
+         * @param block
+         * @return index of the first line after the line specifying the
+         * section of the block (0 for the first block)
+         */
+        public int getStartLine(int block) {
+            return blocks.get(block).start;
+        }
+
+        /**
+         *
+         * @param block
+         * @return index after the last line of the block
+         */
+        public int getEndLine(int block) {
+            return blocks.get(block).end;
+        }
+
+        /**
+         *
+         * @return the number of lines parsed
+         */
+        public int getLineCount() {
+            return lineCount;
+        }
+    }
+
+    /**
+     * A change of lines since the previous parse: {@code removed} lines
+     * starting at index {@code start} (in the previous lines) were replaced by
+     * {@code inserted} lines.
+     */
+    public static final class LineChange {
+
+        private final int start;
+        private final int removed;
+        private final int inserted;
+
+        /**
+         *
+         * @param start index of the first changed line in the previous lines
+         * (the index of the line before which lines were inserted if
+         * {@code removed} is 0)
+         * @param removed number of lines removed or replaced
+         * @param inserted number of lines inserted or replacing the removed
+         * lines
+         */
+        public LineChange(int start, int removed, int inserted) {
+            if (start < 0 || removed < 0 || inserted < 0) {
+                throw new IllegalArgumentException("Line change must not contain negative values.");
+            }
+            this.start = start;
+            this.removed = removed;
+            this.inserted = inserted;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+    }
+
+    /**
+     * Called by {@link #_parseIncremental(List, Outline, List)} for every block
+     * of the previous parse which is processed again or removed, before any
+     * lines are processed. Subclasses must discard all results obtained from
+     * the lines of the block. Results of other blocks are kept, though the
+     * lines of blocks after a change have moved by the difference of inserted
+     * and removed lines of all changes before them. The default implementation
+     * does nothing.
+     *
+     * @param sectionID the section of the block
+     * @param startLine index of the first line after the line specifying the
+     * section (0 for the first block) in the previous lines
+     * @param endLine index after the last line of the block in the previous
+     * lines
+     */
+    protected void discardBlock(String sectionID, int startLine, int endLine) {
+    }
+
+    /**
+     * Parse a list of lines, processing again only the blocks of sections
+     * affected by changes since the previous parse. The lines are divided into
+     * blocks at lines specifying a section (see {@link Outline}). A block is
+     * affected by a change if it contains a changed line or the line before a
+     * change. For every affected block of the previous parse,
+     * {@link #discardBlock(String, int, int)} is called, then the changed
+     * region is divided into blocks again and the new blocks are processed one
+     * after another as by {@link #_parse(List)}, including the actions on
+     * entering and leaving the section. As blocks are processed on their own,
+     * the sections must not depend on the processing of other blocks: if an
+     * affected block or a new block belongs to a section which is not
+     * independent (see {@link #addSection(String, Action, Action, boolean)}),
+     * all blocks from there to the end are processed again.
+     *
+     * If {@code previous} is null, all lines are processed (which is
+     * equivalent to {@link #_parse(List)} unless a processor changes the
+     * section manually). This is also the case when collecting errors (see
+     * {@link #setMaxErrors(int)}), where all blocks of the previous outline
+     * are discarded. Exceptions are reported as by
+     * {@link #_parseParallel(List, ForkJoinPool)}. After an exception, the
+     * next parse must not be incremental.
+     *
+     * @param lines the current lines
+     * @param previous the outline returned by the previous parse of these
+     * lines or null
+     * @param changes the changes from the lines of the previous parse to the
+     * current lines, ordered by start and not overlapping (ignored if
+     * {@code previous} is null)
+     * @return the outline of the current lines, to be passed to the next parse
+     * @throws UnknownSectionException
+     * @throws UnknownKeyException
+     * @throws RepeatedKeyException
+     * @throws IllegalLineException
+     * @throws ParseException
+     */
+    protected Outline _parseIncremental(List<String> lines, Outline previous, List<LineChange> changes) throws UnknownSectionException, UnknownKeyException, RepeatedKeyException, IllegalLineException, ParseException {
+        grammar.freeze();
+        long start = 0;
+        if (listener != null) {
+            listener.parseStarted();
+            start = System.nanoTime();
+        }
+        List<Block> blocks;
+        if (previous == null || maxErrors > 0) {
+            if (previous != null) {
+                discardBlocks(previous.blocks, 0, previous.blocks.size());
+            }
+            blocks = scanBlocks(lines);
+            for (Block block : blocks) {
+                parseBlock(lines, block);
+            }
+        } else {
+            blocks = reparseChanged(lines, previous, changes);
+        }
+        reportBlockErrors(blocks);
+        List<Block> outline = new ArrayList<>(blocks.size());
+        for (Block block : blocks) {
+            outline.add(block.ctx == null ? block : block.moved(0));
+        }
+        if (listener != null) {
+            listener.parseFinished(0, System.nanoTime() - start);
+        }
+        return new Outline(outline, lines.size());
+    }
+
+    /**
+     * Process the blocks affected by changes again.
+     *
+     * @return the blocks of the current lines, where blocks taken from the
+     * previous outline have no context
+     */
+    private List<Block> reparseChanged(List<String> lines, Outline previous, List<LineChange> changes) {
+        List<Block> old = previous.blocks;
+        int delta = 0;
+        int last = -1;
+        for (LineChange change : changes) {
+            if (change.start <= last || change.start + change.removed > previous.lineCount) {
+                throw new IllegalArgumentException("Line changes must be ordered, not overlapping and inside the previous lines.");
+            }
+            last = change.start + change.removed - 1;
+            delta += change.inserted - change.removed;
+        }
+        if (previous.lineCount + delta != lines.size()) {
+            throw new IllegalArgumentException("Line changes do not match the number of lines.");
+        }
+
+        List<Block> blocks = new ArrayList<>(old.size());
+        int next = 0; // next block of the previous outline to take over
+        delta = 0; // of the changes before the next block
+        int c = 0;
+        while (c < changes.size()) {
+            // the region of affected blocks starting with this change
+            int first = blockBefore(old, changes.get(c).start);
+            int end = first; // after the last affected block
+            int regionDelta = 0;
+            while (c < changes.size() && blockBefore(old, changes.get(c).start) <= end) {
+                LineChange change = changes.get(c++);
+                end = Math.max(end, blockBefore(old, change.start + change.removed) + 1);
+                regionDelta += change.inserted - change.removed;
+            }
+            for (int i = first; i < end; i++) {
+                if (!old.get(i).section.independent) {
+                    end = old.size();
+                    break;
+                }
+            }
+            List<Block> region = null;
+            while (region == null) {
+                if (end == old.size()) {
+                    regionDelta = lines.size() - previous.lineCount - delta;
+                    c = changes.size();
+                }
+                region = scanBlocks(lines, old.get(first).section, old.get(first).start + delta, old.get(end - 1).end + delta + regionDelta);
+                if (end < old.size()) {
+                    for (Block block : region) {
+                        if (!block.section.independent) {
+                            end = old.size();
+                            region = null;
+                            break;
+                        }
+                    }
+                }
+            }
+            for (int i = next; i < first; i++) {
+                blocks.add(old.get(i).moved(delta));
+            }
+            discardBlocks(old, first, end);
+            for (Block block : region) {
+                parseBlock(lines, block);
+            }
+            blocks.addAll(region);
+            delta += regionDelta;
+            next = end;
+        }
+        for (int i = next; i < old.size(); i++) {
+            blocks.add(old.get(i).moved(delta));
+        }
+        return blocks;
+    }
+
+    /**
+     * Index of the block containing the line before the line with the given
+     * index (the first block if the index is 0).
+     */
+    private static int blockBefore(List<Block> blocks, int index) {
+        if (index == 0) {
+            return 0;
+        }
+        int line = index - 1;
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blocks.get(mid).first() <= line) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void discardBlocks(List<Block> blocks, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Block block = blocks.get(i);
+            discardBlock(block.section.getID(), block.start, block.end);
+        }
+    }
+
+    /**
+     * Divide lines into blocks at lines specifying a section.
+     */
+    private List<Block> scanBlocks(List<String> lines) {
+        return scanBlocks(lines, grammar.startSection, 0, lines.size());
+    }
+
+    /**
+     * Divide the lines with index {@code start} to {@code end - 1} into blocks
+     * at lines specifying a section, where the first block belongs to the given
+     * section.
+     */
+    private List<Block> scanBlocks(List<String> lines, Section section, int start, int end) {
+        List<Block> blocks = new ArrayList<>();
+        LineClassifier.Match<Section> match = new LineClassifier.Match<>();
+        int i = start;
+        for (String line : lines.subList(start, end)) {
+            if (!(grammar.SKIP_EMPTY_LINES && isBlank(line)) && grammar.classifier.classify(line, section.index, match) == LineClassifier.SECTION) {
+                blocks.add(new Block(section, start, i));
+                section = match.section;
+                start = i + 1;
+            }
+            i++;
+        }
+        blocks.add(new Block(section, start, i));
+        return blocks;
+    }
+
+    /**
+     * Process a block, storing a {@link ParseException} in the block.
+     */
+    private void parseBlock(List<String> lines, Block block) {
+        ListIterator<String> it = lines.listIterator(block.start);
+        block.ctx = new ParseContext(this, it);
+        block.ctx.section = block.section;
+        ParseContext outer = enterContext(block.ctx);
+        try {
+            enterSection(block.ctx);
+            parseLines(block.ctx, block.end);
+            if (block.ctx.stopped) {
+                return;
+            }
+            if (it.nextIndex() == block.end && it.hasNext()) {
+                it.next(); // the line specifying the next section, as when processing all lines
+                if (listener != null) {
+                    listener.lineClassified(block.ctx.section.getID(), it.nextIndex(), ParseListener.LineType.SECTION);
+                }
+            }
+            leaveSection(block.ctx);
+        } catch (ParseException ex) {
+            block.exception = ex;
+        } finally {
+            block.occurrences = block.ctx.lastOccurrences;
+            exitContext(block.ctx, outer);
+        }
+    }
+
+    /**
+     * Pass a line with a key to its processor, checking whether a one-shot key
+     * was already used before.
+     */
+    private void processKey(ParseContext ctx, KeyProcessor keyProcessor, CharSequence line, int argStart) throws RepeatedKeyException, ParseException {
+        if (keyProcessor.oneShot) {
+            int index = grammar.oneShotIndices.get(keyProcessor);
+            int lastOccurrence = ctx.lastOccurrences[index];
+            if (lastOccurrence != -1) {
+                throw new RepeatedKeyException(ctx.it.nextIndex(), keyProcessor.key, lastOccurrence, ctx.stackTraces);
+            }
+            ctx.lastOccurrences[index] = ctx.it.nextIndex();
+        }
+        if (keyProcessor instanceof BatchKeyProcessor) {
+            addToBatch(ctx, (BatchKeyProcessor) keyProcessor, line, argStart); // the time is measured when the chunk is passed on
+        } else if (ctx.listener == null) {
+            dispatchKey(ctx, keyProcessor, line, argStart);
+        } else {
+            long start = System.nanoTime();
+            String sectionID = ctx.section.getID(); // the processor might change the section
+            dispatchKey(ctx, keyProcessor, line, argStart);
+            ctx.listener.keyProcessed(sectionID, keyProcessor.key, System.nanoTime() - start);
+        }
+    }
+
+    private void dispatchKey(ParseContext ctx, KeyProcessor keyProcessor, CharSequence line, int argStart) throws ParseException {
+        if (keyProcessor instanceof BlockKeyProcessor) {
+            processBlock(ctx, (BlockKeyProcessor) keyProcessor, line, argStart);
+        } else {
+            keyProcessor.processLine(line, argStart, ctx.it, ctx.symbols);
+        }
+    }
+
+    /**
+     * Add the argument of a key of a {@link BatchKeyProcessor} to the chunk
+     * of the context, flushing the chunk first if it belongs to another
+     * processor and afterwards if it is full.
+     */
+    private static void addToBatch(ParseContext ctx, BatchKeyProcessor processor, CharSequence line, int argStart) throws ParseException {
+        if (ctx.batchProcessor != processor) {
+            flushBatch(ctx);
+            ctx.batchProcessor = processor;
+        }
+        int chunkSize = processor.getChunkSize();
+        if (ctx.batchArgs == null || ctx.batchArgs.length < chunkSize) { // the chunk is empty here
+            ctx.batchArgs = new String[chunkSize];
+            ctx.batchLines = new int[chunkSize];
+        }
+        ctx.batchArgs[ctx.batchCount] = argument(line, argStart, ctx.symbols);
+        ctx.batchLines[ctx.batchCount] = ctx.it.nextIndex();
+        ctx.batchCount++;
+        if (ctx.batchCount == chunkSize) {
+            flushBatch(ctx);
+        }
+    }
+
+    /**
+     * Pass the arguments collected for a {@link BatchKeyProcessor} (if any)
+     * to the processor. The listener is notified of the time taken for the
+     * whole chunk.
+     */
+    private static void flushBatch(ParseContext ctx) throws ParseException {
+        int count = ctx.batchCount;
+        if (count == 0) {
+            return;
+        }
+        ctx.batchCount = 0;
+        long start = 0;
+        String sectionID = null;
+        if (ctx.listener != null) {
+            start = System.nanoTime();
+            sectionID = ctx.section.getID(); // the processor might change the section
+        }
+        try {
+            ctx.batchProcessor.process(ctx.batchArgs, ctx.batchLines, count, ctx.it);
+        } finally {
+            Arrays.fill(ctx.batchArgs, 0, count, null);
+        }
+        if (ctx.listener != null) {
+            ctx.listener.keyProcessed(sectionID, ctx.batchProcessor.key, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Collect the lines of the block following a key of a
+     * {@link BlockKeyProcessor} and pass them to the processor. The boundary
+     * is located with the line classifier.
+     */
+    private void processBlock(ParseContext ctx, BlockKeyProcessor processor, CharSequence line, int argStart) throws ParseException {
+        String arg = argument(line, argStart, ctx.symbols); // the view is not valid after reading further
+        ListIterator<String> it = ctx.it;
+        LineViewIterator views = it instanceof LineViewIterator ? (LineViewIterator) it : null;
+        BlockKeyProcessor.Terminator terminator = processor.getTerminator();
+        int keyLine = it.nextIndex();
+        List<String> lines = new ArrayList<>();
+        boolean terminated = false;
+        scan:
+        while (it.hasNext()) {
+            CharSequence next = views != null ? views.nextView() : it.next();
+            int type = grammar.classifier.classify(next, ctx.section.index, ctx.match);
+            if (type == LineClassifier.SECTION || type == LineClassifier.UNKNOWN_SECTION) {
+                it.previous();
+                break;
+            }
+            switch (terminator) {
+                case NEXT_KEY:
+                    if (type == LineClassifier.KEY || type == LineClassifier.UNKNOWN_KEY) {
+                        it.previous();
+                        break scan;
+                    }
+                    break;
+                case BLANK_LINE:
+                    if (isBlank(next)) {
+                        break scan;
+                    }
+                    break;
+                case END_MARKER:
+                    if (LineKeyProcessor.regionEquals(next, 0, next.length(), processor.getEndMarker())) {
+                        terminated = true;
+                        break scan;
+                    }
+                    break;
+                case INDENTATION:
+                    if (next.length() == 0 || next.charAt(0) != ' ' && next.charAt(0) != '\t') {
+                        it.previous();
+                        break scan;
+                    }
+                    break;
+            }
+            lines.add(next.toString());
+        }
+        if (terminator == BlockKeyProcessor.Terminator.END_MARKER && !terminated) {
+            throw new UnterminatedBlockException(keyLine, processor.key, processor.getEndMarker(), ctx.stackTraces);
+        }
+        processor.process(arg, keyLine + 1, lines, it);
+    }
+
+    /**
+     * Initialize a {@link ParseException} with required information such that {@link ParseException#getMessage()
+     * } can be used. This is required when manually throwing
+     * {@link ParseException}s to the user of {@link LinearFileParser}.
+     *
+     * @param ex
+     * @return
+     */
+    protected ParseException setupException(ParseException ex) {
+        ex.setResourceProvider(rp);
+        return ex;
+    }
+
+    /**
+     * Create a {@link ParseException} which is initialized by this
+     * {@link LinearFileParser}. Equivalent to calling {@link #setupException(felixwiemuth.linearfileparser.ParseException)
+     * } on an instance of {@link ParseException}.
+     *
+     * @param line
+     * @param msg
+     * @return
+     */
+    protected ParseException newParseException(int line, String msg) {
+        return setupException(new ParseException(line, msg, stackTraces));
+    }
+
+    /**
+     * Whether the line consists of whitespace only (in the sense of
+     * {@link String#trim()}).
+     */
+    private static boolean isBlank(CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return the argument of a line with a key, taken from the symbol table
+     * if given, or null if the line ends after the key
+     */
+    private static String argument(CharSequence line, int argStart, SymbolTable symbols) {
+        if (argStart >= line.length()) {
+            return null;
+        }
+        return symbols == null ? line.subSequence(argStart, line.length()).toString() : symbols.intern(line, argStart, line.length());
+    }
+
+    private static void assertSectionNotNull(ParseContext ctx) {
+        if (ctx.section == null) {
             throw new IllegalStateException("Assertion failed: Implementation error (please contact developer): section==null");
         }
     }
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A {@link StreamLineIterator} reading lines from a memory-mapped file. The
+ * file is mapped in windows of {@link #DEFAULT_MAP_SIZE} bytes (or larger if a
+ * single line does not fit), so files of any size can be read. Line
+ * terminators are searched for directly in the mapped bytes. Lines consisting
+ * of ASCII characters only are returned as views on the mapped bytes and are
+ * only decoded when {@link CharSequence#toString()} is called, other lines
+ * are decoded with the given charset right away.
+ *
+ * As with {@link java.io.BufferedReader#readLine()}, a line is terminated by
+ * '\n', '\r' or "\r\n".
+ *
+ * @author Felix Wiemuth
+ */
+class MappedLineIterator extends StreamLineIterator {
+
+    /**
+     * A line of ASCII characters backed by a byte buffer.
+     */
+    static final class AsciiLine implements CharSequence {
+
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int length;
+
+        AsciiLine(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException();
+            }
+            return (char) buffer.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException();
+            }
+            return new AsciiLine(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Default size of the mapped windows in bytes.
+     */
+    public static final int DEFAULT_MAP_SIZE = 64 * 1024 * 1024;
+
+    // for searching bytes eight at a time
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LF = '\n' * ONES;
+    private static final long CR = '\r' * ONES;
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final long size;
+    private final int mapSize;
+    private MappedByteBuffer map;
+    private long mapStart; // file position of the first mapped byte
+    private int mapLength;
+    private long position; // file position of the next line
+    private String skipPrefix; // the prefix of the last call to skipSource
+    private byte[] skipPrefixBytes; // skipPrefix encoded
+
+    /**
+     *
+     * @param channel the channel to read from (is closed by {@link #close()})
+     * @param charset the charset of the file, which must encode ASCII
+     * characters as single bytes of the same value (as UTF-8 and ISO-8859-1
+     * do)
+     * @param mapSize the size of the mapped windows in bytes
+     * @param window the maximum number of lines to keep in memory (at least 2)
+     * @throws IOException
+     */
+    MappedLineIterator(FileChannel channel, Charset charset, int mapSize, int window) throws IOException {
+        super(window);
+        if (!isAsciiCompatible(charset)) {
+            throw new IllegalArgumentException("Charset " + charset + " is not ASCII-compatible.");
+        }
+        if (mapSize < 1) {
+            throw new IllegalArgumentException("Map size must be positive.");
+        }
+        this.channel = channel;
+        this.charset = charset;
+        this.size = channel.size();
+        this.mapSize = mapSize;
+        this.position = channel.position();
+    }
+
+    MappedLineIterator(FileChannel channel, Charset charset) throws IOException {
+        this(channel, charset, DEFAULT_MAP_SIZE, DEFAULT_WINDOW);
+    }
+
+    static boolean isAsciiCompatible(Charset charset) {
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        return Arrays.equals(new String(ascii, charset).getBytes(StandardCharsets.ISO_8859_1), ascii);
+    }
+
+    private void map(long start, long length) throws IOException {
+        mapStart = start;
+        mapLength = (int) Math.min(length, size - start);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapLength);
+    }
+
+    /**
+     *
+     * @return the file position of the line returned by the next call to
+     * {@link #readLine()}
+     */
+    @Override
+    long position() {
+        return position;
+    }
+
+    @Override
+    protected CharSequence readLine() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        if (map == null || position >= mapStart + mapLength) {
+            map(position, mapSize);
+        }
+        while (true) {
+            int begin = (int) (position - mapStart);
+            int end = begin;
+            int bits = 0; // negative if a byte outside ASCII occurs
+            byte b = 0;
+            while (end < mapLength) {
+                b = map.get(end);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                bits |= b;
+                end++;
+            }
+            boolean mappedToEnd = mapStart + mapLength == size;
+            if (!mappedToEnd && (end == mapLength || b == '\r' && end + 1 == mapLength)) {
+                // the line or its terminator continues after the window: map a larger window starting at this line
+                long covered = mapStart + mapLength - position;
+                if (covered >= Integer.MAX_VALUE) {
+                    throw new IOException("Line starting at byte " + position + " is too long.");
+                }
+                map(position, Math.min(Integer.MAX_VALUE, Math.max(mapSize, 2 * covered)));
+                continue;
+            }
+            int next = end;
+            if (end < mapLength) {
+                next++;
+                if (b == '\r' && next < mapLength && map.get(next) == '\n') {
+                    next++;
+                }
+            }
+            position = mapStart + next;
+            if (bits >= 0) {
+                return new AsciiLine(map, begin, end - begin);
+            }
+            ByteBuffer bytes = map.duplicate();
+            bytes.position(begin);
+            bytes.limit(end);
+            return charset.decode(bytes).toString();
+        }
+    }
+
+    /**
+     * Skips lines by searching for line terminators in the mapped bytes, eight
+     * bytes at a time, without decoding them.
+     */
+    @Override
+    protected int skipSource(String prefix, int max) throws IOException {
+        byte[] prefixBytes = null;
+        if (prefix != null) {
+            if (!prefix.equals(skipPrefix)) {
+                skipPrefix = prefix;
+                skipPrefixBytes = prefix.getBytes(charset);
+            }
+            prefixBytes = skipPrefixBytes;
+        }
+        int skipped = 0;
+        while (skipped < max && position < size) {
+            if (prefixBytes != null && startsWith(position, prefixBytes)) {
+                break;
+            }
+            position = nextLine(position);
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     *
+     * @param word
+     * @return whether any byte of the word is zero
+     */
+    private static boolean hasZeroByte(long word) {
+        return ((word - ONES) & ~word & HIGH_BITS) != 0;
+    }
+
+    /**
+     *
+     * @param start a file position where a line starts
+     * @return the file position of the next line
+     */
+    private long nextLine(long start) throws IOException {
+        long pos = start;
+        while (true) {
+            if (pos >= size) {
+                return size;
+            }
+            if (pos < mapStart || pos >= mapStart + mapLength) {
+                map(pos, mapSize);
+            }
+            int i = (int) (pos - mapStart);
+            while (i + 8 <= mapLength) {
+                long word = map.getLong(i);
+                if (hasZeroByte(word ^ LF) || hasZeroByte(word ^ CR)) {
+                    break;
+                }
+                i += 8;
+            }
+            while (i < mapLength) {
+                byte b = map.get(i);
+                if (b == '\n') {
+                    return mapStart + i + 1;
+                }
+                if (b == '\r') {
+                    pos = mapStart + i + 1;
+                    if (pos < size) {
+                        if (pos >= mapStart + mapLength) {
+                            map(pos, mapSize);
+                        }
+                        if (map.get((int) (pos - mapStart)) == '\n') {
+                            pos++;
+                        }
+                    }
+                    return pos;
+                }
+                i++;
+            }
+            pos = mapStart + mapLength;
+        }
+    }
+
+    /**
+     *
+     * @return whether the bytes at the given file position start with the
+     * given bytes
+     */
+    private boolean startsWith(long pos, byte[] bytes) throws IOException {
+        if (pos + bytes.length > size) {
+            return false;
+        }
+        if (pos < mapStart || pos + bytes.length > mapStart + mapLength) {
+            map(pos, Math.max(mapSize, bytes.length));
+        }
+        int i = (int) (pos - mapStart);
+        for (byte b : bytes) {
+            if (map.get(i++) != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -31,12 +31,23 @@ public class MissingArgumentException extends ParseException {
         this.key = key;
     }
 
+    /**
+     *
+     * @param line
+     * @param key
+     * @param stackTrace whether to record the stack trace
+     */
+    public MissingArgumentException(int line, String key, boolean stackTrace) {
+        super(line, null, stackTrace);
+        this.key = key;
+    }
+
     public String getKey() {
         return key;
     }
 
     @Override
     protected String getMsg() {
-        return String.format(getRp().getString(R.MISSING_ARGUMENT), key);
+        return format(R.MISSING_ARGUMENT, key);
     }
 }
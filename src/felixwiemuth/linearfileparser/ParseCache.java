@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of parse results in a directory. Before a file is parsed,
+ * a fingerprint of it is taken (size, modification time and a CRC-32 checksum
+ * of the content, which is only computed if there is an entry with the same
+ * size and modification time). If an entry with the same fingerprint and the
+ * same grammar version exists, the result is restored from the entry with a
+ * {@link Serializer} instead of parsing the file again. Otherwise the file is
+ * parsed with a {@link BatchParser.FileParser} and the result is stored.
+ *
+ * The grammar version identifies the definition of the parser and the format
+ * of the serialized results: change it whenever sections or processors change
+ * in a way that produces different results, so that all existing entries are
+ * ignored (and replaced). Entries are written atomically, so several threads
+ * and processes can share a cache directory. When the entries exceed the
+ * maximum size, the least recently used entries are deleted.
+ *
+ * @author Felix Wiemuth
+ * @param <R> the type of the result of parsing a file
+ */
+public class ParseCache<R> {
+
+    /**
+     * Writes and reads parse results.
+     *
+     * @param <R> the type of the result
+     */
+    public interface Serializer<R> {
+
+        /**
+         * Write a result. The stream must not be closed.
+         *
+         * @param result
+         * @param out
+         * @throws IOException
+         */
+        void write(R result, DataOutputStream out) throws IOException;
+
+        /**
+         * Read a result written by {@link #write(Object, DataOutputStream)}.
+         *
+         * @param in
+         * @return
+         * @throws IOException also if the data is invalid
+         */
+        R read(DataInputStream in) throws IOException;
+    }
+
+    private static final int MAGIC = 0x4c465043; // "LFPC"
+    private static final int FORMAT = 1;
+    private static final String SUFFIX = ".cache";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final String grammarVersion;
+    private final Serializer<R> serializer;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     *
+     * @param directory the directory to store entries in (created if it does
+     * not exist)
+     * @param maxBytes the maximum total size of all entries (not negative)
+     * @param grammarVersion identifies the parser definition and result format
+     * @param serializer
+     * @throws IOException if the directory cannot be created
+     */
+    public ParseCache(Path directory, long maxBytes, String grammarVersion, Serializer<R> serializer) throws IOException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative.");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        this.grammarVersion = grammarVersion;
+        this.serializer = serializer;
+    }
+
+    /**
+     * The fingerprint of a file. The checksum is only computed when needed,
+     * i.e. to confirm an entry with the same size and modification time or to
+     * write an entry.
+     */
+    private static final class Fingerprint {
+
+        private final Path file;
+        private final long size;
+        private final long modified;
+        private long checksum = -1; // -1 if not computed yet (a CRC-32 is never negative)
+
+        private Fingerprint(Path file, long size, long modified) {
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        private static Fingerprint of(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new Fingerprint(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+
+        private long checksum() throws IOException {
+            if (checksum < 0) {
+                CRC32 crc = new CRC32();
+                byte[] buffer = new byte[64 * 1024];
+                try (InputStream in = Files.newInputStream(file)) {
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        crc.update(buffer, 0, n);
+                    }
+                }
+                checksum = crc.getValue();
+            }
+            return checksum;
+        }
+
+        private boolean isUnchanged(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeLong(checksum());
+        }
+
+        private boolean matches(DataInputStream in) throws IOException {
+            return in.readLong() == size && in.readLong() == modified && in.readLong() == checksum();
+        }
+    }
+
+    /**
+     * Get the result of parsing a file, either from the cache or by parsing
+     * it (and storing the result).
+     *
+     * @param file
+     * @param parser parses the file if there is no valid entry
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     */
+    public R get(Path file, BatchParser.FileParser<R> parser) throws IOException, ParseException {
+        String path = file.toAbsolutePath().normalize().toString();
+        Path entry = directory.resolve(entryName(path));
+        Fingerprint fingerprint = Fingerprint.of(file);
+        R result = read(entry, path, fingerprint);
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+        misses.incrementAndGet();
+        result = parser.parse(file);
+        if (fingerprint.isUnchanged(file)) { // otherwise the file was changed while parsing
+            write(entry, path, fingerprint, result);
+            evict();
+        }
+        return result;
+    }
+
+    /**
+     * Wrap a file parser such that it uses this cache, e.g. to use the cache
+     * with a {@link BatchParser}.
+     *
+     * @param parser
+     * @return
+     */
+    public BatchParser.FileParser<R> wrap(final BatchParser.FileParser<R> parser) {
+        return new BatchParser.FileParser<R>() {
+            @Override
+            public R parse(Path file) throws IOException, ParseException {
+                return get(file, parser);
+            }
+        };
+    }
+
+    private static String entryName(String path) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(2 * digest.length + SUFFIX.length());
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException ex) { // every Java platform supports SHA-1
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Read an entry.
+     *
+     * @return the result or null if there is no valid entry
+     */
+    private R read(Path entry, String path, Fingerprint fingerprint) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || !in.readUTF().equals(grammarVersion) || !in.readUTF().equals(path) || !fingerprint.matches(in)) {
+                return null;
+            }
+            R result = serializer.read(in);
+            touch(entry);
+            return result;
+        } catch (IOException | RuntimeException ex) { // no entry or an invalid entry (also if the serializer fails on invalid data), which will be replaced
+            return null;
+        }
+    }
+
+    private void write(Path entry, String path, Fingerprint fingerprint, R result) throws IOException {
+        Path tmp = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(grammarVersion);
+                out.writeUTF(path);
+                fingerprint.write(out);
+                serializer.write(result, out);
+            }
+            try {
+                Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            // only affects eviction order
+        }
+    }
+
+    /**
+     * Delete the least recently used entries while the entries exceed the
+     * maximum size.
+     */
+    private void evict() throws IOException {
+        final List<Path> entries = new ArrayList<>();
+        final List<BasicFileAttributes> attributes = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : stream) {
+                try {
+                    BasicFileAttributes a = Files.readAttributes(entry, BasicFileAttributes.class);
+                    entries.add(entry);
+                    attributes.add(a);
+                    total += a.size();
+                } catch (NoSuchFileException ex) {
+                    // deleted concurrently
+                }
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        List<Integer> order = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i, Integer j) {
+                return attributes.get(i).lastModifiedTime().compareTo(attributes.get(j).lastModifiedTime());
+            }
+        });
+        for (int i : order) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Files.deleteIfExists(entries.get(i));
+            total -= attributes.get(i).size();
+        }
+    }
+
+    /**
+     * Delete all entries.
+     *
+     * @throws IOException
+     */
+    public void clear() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : stream) {
+                Files.deleteIfExists(entry);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return the number of results restored from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     *
+     * @return the number of files parsed because there was no valid entry
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link ParseException}s collected during a parse in error-collecting
+ * mode (see {@link LinearFileParser#setMaxErrors(int)}), ordered by the line
+ * where they occurred. At most a fixed number of exceptions is kept: when it is
+ * reached, parsing stops and {@link #isLimitReached()} returns true.
+ *
+ * @author Felix Wiemuth
+ */
+public class ParseErrorReport {
+
+    private final int maxErrors;
+    private final List<ParseException> errors = new ArrayList<>();
+
+    ParseErrorReport(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Add an exception if the limit is not reached yet.
+     *
+     * @param ex
+     * @return whether further exceptions can be added
+     */
+    boolean add(ParseException ex) {
+        if (errors.size() < maxErrors) {
+            errors.add(ex);
+        }
+        return errors.size() < maxErrors;
+    }
+
+    /**
+     *
+     * @return the collected exceptions (unmodifiable)
+     */
+    public List<ParseException> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     *
+     * @return whether no exception occurred
+     */
+    public boolean isEmpty() {
+        return errors.isEmpty();
+    }
+
+    public int size() {
+        return errors.size();
+    }
+
+    /**
+     *
+     * @return the maximum number of exceptions collected
+     */
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    /**
+     *
+     * @return whether the maximum number of exceptions was reached, in which
+     * case parsing stopped early and there may be further errors
+     */
+    public boolean isLimitReached() {
+        return errors.size() >= maxErrors;
+    }
+
+    /**
+     *
+     * @return the exception at the first line or null if there is none
+     */
+    public ParseException getFirst() {
+        return errors.isEmpty() ? null : errors.get(0);
+    }
+
+    /**
+     *
+     * @return the messages of all exceptions, one per line
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (ParseException ex : errors) {
+            sb.append(ex.getMessage()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
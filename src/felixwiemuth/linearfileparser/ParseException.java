@@ -17,6 +17,7 @@
 
 package felixwiemuth.linearfileparser;
 
+import felixwiemuth.linearfileparser.localization.CachingResourceProvider;
 import felixwiemuth.linearfileparser.localization.R;
 import felixwiemuth.linearfileparser.localization.ResourceProvider;
 
@@ -30,7 +31,8 @@ import felixwiemuth.linearfileparser.localization.ResourceProvider;
  * {@link felixwiemuth.linearfileparser.LinearFileParser.KeyProcessor} must be
  * passed to {@link LinearFileParser#setupException(felixwiemuth.linearfileparser.ParseException)
  * }. For convenience use {@link LinearFileParser#newParseException(int, java.lang.String)
- * }.
+ * }. The message is built once and memoized until another
+ * {@link ResourceProvider} is set.
  *
  * @author Felix Wiemuth
  */
@@ -38,6 +40,7 @@ public class ParseException extends Exception {
 
     private ResourceProvider rp;
     private final int line;
+    private String message; // memoized result of getMessage()
 
     /**
      *
@@ -59,8 +62,23 @@ public class ParseException extends Exception {
         this.line = line;
     }
 
+    /**
+     *
+     * @param line the line number in the source file which is not properly
+     * formatted
+     * @param msg a detailed message of the syntax error (may be null)
+     * @param stackTrace whether to record the stack trace (creating exceptions
+     * without stack trace is much cheaper, see
+     * {@link LinearFileParser#setExceptionStackTraces(boolean)})
+     */
+    public ParseException(int line, String msg, boolean stackTrace) {
+        super(msg, null, true, stackTrace);
+        this.line = line;
+    }
+
     public void setResourceProvider(ResourceProvider rp) {
         this.rp = rp;
+        this.message = null;
     }
 
     /**
@@ -85,7 +103,12 @@ public class ParseException extends Exception {
      */
     @Override
     public String getMessage() {
-        return buildMessage(getMsg());
+        String m = message;
+        if (m == null) {
+            m = buildMessage(getMsg());
+            message = m;
+        }
+        return m;
     }
 
     /**
@@ -104,6 +127,22 @@ public class ParseException extends Exception {
         return sb.toString();
     }
 
+    /**
+     * Format the string for the given key with the given arguments as
+     * {@link String#format(String, Object...)} does. Uses the parsed templates
+     * of a {@link CachingResourceProvider} if set.
+     *
+     * @param key
+     * @param args
+     * @return
+     */
+    protected String format(R key, Object... args) {
+        if (rp instanceof CachingResourceProvider) {
+            return ((CachingResourceProvider) rp).getTemplate(key).format(args);
+        }
+        return String.format(rp.getString(key), args);
+    }
+
     /**
      * Get the message to be displayed. Default is {@link Exception#getMessage()
      * }.
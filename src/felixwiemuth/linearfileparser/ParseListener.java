@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+/**
+ * Receives events while parsing, e.g. to collect metrics (see
+ * {@link ParseStatistics}). Set it with
+ * {@link LinearFileParser#setParseListener(ParseListener)}. All methods do
+ * nothing by default, so only the events of interest have to be overridden.
+ *
+ * Events are reported by the thread executing the parse. If a listener is used
+ * by several parses at the same time, it has to be thread-safe. Methods should
+ * return quickly as they are called for every line.
+ *
+ * @author Felix Wiemuth
+ */
+public abstract class ParseListener {
+
+    /**
+     * The type of a line as determined by the parser.
+     */
+    public enum LineType {
+        /**
+         * A skipped line containing whitespace only.
+         */
+        EMPTY,
+        COMMENT,
+        /**
+         * A line specifying a section (known or unknown).
+         */
+        SECTION,
+        /**
+         * A line with a key (known or unknown).
+         */
+        KEY,
+        /**
+         * A line passed to the default processor.
+         */
+        OTHER
+    }
+
+    /**
+     * Called before the first line is processed.
+     */
+    public void parseStarted() {
+    }
+
+    /**
+     * Called for every line read by the parser (not for lines consumed by
+     * processors), before the line is processed.
+     *
+     * @param sectionID the ID of the current section
+     * @param line the line number
+     * @param type
+     */
+    public void lineClassified(String sectionID, int line, LineType type) {
+    }
+
+    /**
+     * Called after a key processor processed a line. For a
+     * {@link BatchKeyProcessor}, called once for every chunk passed to the
+     * processor with the key of the processor.
+     *
+     * @param sectionID the ID of the section the line belongs to
+     * @param key the key of the line
+     * @param nanos the time taken by the processor in nanoseconds
+     */
+    public void keyProcessed(String sectionID, String key, long nanos) {
+    }
+
+    /**
+     * Called after the default processor processed a line.
+     *
+     * @param sectionID the ID of the section the line belongs to
+     * @param nanos the time taken by the processor in nanoseconds
+     */
+    public void defaultProcessed(String sectionID, long nanos) {
+    }
+
+    /**
+     * Called after a section was entered (including the start section).
+     *
+     * @param sectionID
+     * @param line the number of the line specifying the section (0 for the
+     * start section)
+     */
+    public void sectionEntered(String sectionID, int line) {
+    }
+
+    /**
+     * Called after a section was left (including when the end of input is
+     * reached).
+     *
+     * @param sectionID
+     * @param line the number of the last line processed
+     */
+    public void sectionLeft(String sectionID, int line) {
+    }
+
+    /**
+     * Called when a {@link ParseException} aborts processing.
+     *
+     * @param ex
+     */
+    public void exceptionRaised(ParseException ex) {
+    }
+
+    /**
+     * Called after parsing finished without exception.
+     *
+     * @param readNanos the time spent by the parser reading lines (I/O and
+     * decoding) in nanoseconds
+     * @param dispatchNanos the time spent classifying and processing lines in
+     * nanoseconds (including lines read by processors themselves)
+     */
+    public void parseFinished(long readNanos, long dispatchNanos) {
+    }
+}
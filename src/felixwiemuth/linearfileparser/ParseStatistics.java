@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link ParseListener} aggregating counters and processing time histograms
+ * per key and per section. It is thread-safe, so one instance can collect the
+ * statistics of several parses running at the same time.
+ *
+ * @author Felix Wiemuth
+ */
+public class ParseStatistics extends ParseListener {
+
+    /**
+     * A histogram of durations with buckets of powers of two nanoseconds.
+     */
+    public static final class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64); // bucket i counts values v with 2^(i-1) <= v < 2^i (bucket 0: v <= 0)
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+
+        void record(long nanos) {
+            buckets.incrementAndGet(nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos));
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return total.get();
+        }
+
+        public long getMeanNanos() {
+            long n = count.get();
+            return n == 0 ? 0 : total.get() / n;
+        }
+
+        /**
+         * Get an upper bound for the given percentile (which is precise up to
+         * a factor of two).
+         *
+         * @param percentile a value between 0 and 100
+         * @return
+         */
+        public long getPercentileNanos(double percentile) {
+            long n = count.get();
+            long rank = (long) Math.ceil(percentile / 100 * n);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + getCount() + " mean=" + getMeanNanos() + "ns p50<=" + getPercentileNanos(50) + "ns p99<=" + getPercentileNanos(99) + "ns";
+        }
+    }
+
+    /**
+     * Statistics of a key (over all sections).
+     */
+    public static final class KeyStatistics {
+
+        private final Histogram processing = new Histogram();
+
+        /**
+         *
+         * @return how often a processor for the key was invoked
+         */
+        public long getCount() {
+            return processing.getCount();
+        }
+
+        /**
+         *
+         * @return the time taken by the processors for the key
+         */
+        public Histogram getProcessing() {
+            return processing;
+        }
+
+        @Override
+        public String toString() {
+            return processing.toString();
+        }
+    }
+
+    /**
+     * Statistics of a section.
+     */
+    public static final class SectionStatistics {
+
+        private final AtomicLong entered = new AtomicLong();
+        private final AtomicLongArray lines = new AtomicLongArray(ParseListener.LineType.values().length);
+        private final Histogram keyProcessing = new Histogram();
+        private final Histogram defaultProcessing = new Histogram();
+
+        /**
+         *
+         * @return how often the section was entered
+         */
+        public long getEntered() {
+            return entered.get();
+        }
+
+        /**
+         *
+         * @return the number of lines read by the parser while in this section
+         */
+        public long getLines() {
+            long n = 0;
+            for (int i = 0; i < lines.length(); i++) {
+                n += lines.get(i);
+            }
+            return n;
+        }
+
+        /**
+         *
+         * @param type
+         * @return the number of lines of the given type read by the parser
+         * while in this section
+         */
+        public long getLines(ParseListener.LineType type) {
+            return lines.get(type.ordinal());
+        }
+
+        /**
+         *
+         * @return the time taken by key processors in this section
+         */
+        public Histogram getKeyProcessing() {
+            return keyProcessing;
+        }
+
+        /**
+         *
+         * @return the time taken by the default processor in this section
+         * (also gives how often it was invoked)
+         */
+        public Histogram getDefaultProcessing() {
+            return defaultProcessing;
+        }
+
+        @Override
+        public String toString() {
+            return "entered=" + getEntered() + " lines=" + getLines() + " keys: " + keyProcessing + " default: " + defaultProcessing;
+        }
+    }
+
+    private final ConcurrentMap<String, KeyStatistics> keys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SectionStatistics> sections = new ConcurrentHashMap<>();
+    private final AtomicLong parses = new AtomicLong();
+    private final AtomicLong exceptions = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong dispatchNanos = new AtomicLong();
+
+    private KeyStatistics key(String key) {
+        KeyStatistics stats = keys.get(key);
+        if (stats == null) {
+            KeyStatistics newStats = new KeyStatistics();
+            stats = keys.putIfAbsent(key, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    private SectionStatistics section(String sectionID) {
+        SectionStatistics stats = sections.get(sectionID);
+        if (stats == null) {
+            SectionStatistics newStats = new SectionStatistics();
+            stats = sections.putIfAbsent(sectionID, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void parseStarted() {
+        parses.incrementAndGet();
+    }
+
+    @Override
+    public void lineClassified(String sectionID, int line, LineType type) {
+        section(sectionID).lines.incrementAndGet(type.ordinal());
+    }
+
+    @Override
+    public void keyProcessed(String sectionID, String key, long nanos) {
+        key(key).processing.record(nanos);
+        section(sectionID).keyProcessing.record(nanos);
+    }
+
+    @Override
+    public void defaultProcessed(String sectionID, long nanos) {
+        section(sectionID).defaultProcessing.record(nanos);
+    }
+
+    @Override
+    public void sectionEntered(String sectionID, int line) {
+        section(sectionID).entered.incrementAndGet();
+    }
+
+    @Override
+    public void exceptionRaised(ParseException ex) {
+        exceptions.incrementAndGet();
+    }
+
+    @Override
+    public void parseFinished(long readNanos, long dispatchNanos) {
+        this.readNanos.addAndGet(readNanos);
+        this.dispatchNanos.addAndGet(dispatchNanos);
+    }
+
+    /**
+     *
+     * @return the statistics per key
+     */
+    public Map<String, KeyStatistics> getKeys() {
+        return Collections.unmodifiableMap(keys);
+    }
+
+    /**
+     *
+     * @return the statistics per section ID (the ID of the section containing
+     * the global processors is the empty string)
+     */
+    public Map<String, SectionStatistics> getSections() {
+        return Collections.unmodifiableMap(sections);
+    }
+
+    public long getParses() {
+        return parses.get();
+    }
+
+    public long getExceptions() {
+        return exceptions.get();
+    }
+
+    /**
+     *
+     * @return the total time spent by the parser reading lines in
+     * nanoseconds (of parses finished without exception)
+     */
+    public long getReadNanos() {
+        return readNanos.get();
+    }
+
+    /**
+     *
+     * @return the total time spent classifying and processing lines in
+     * nanoseconds (of parses finished without exception)
+     */
+    public long getDispatchNanos() {
+        return dispatchNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("parses=").append(getParses()).append(" exceptions=").append(getExceptions())
+                .append(" read=").append(getReadNanos()).append("ns dispatch=").append(getDispatchNanos()).append("ns\n");
+        for (Map.Entry<String, SectionStatistics> e : sections.entrySet()) {
+            sb.append("section \"").append(e.getKey()).append("\": ").append(e.getValue()).append('\n');
+        }
+        for (Map.Entry<String, KeyStatistics> e : keys.entrySet()) {
+            sb.append("key \"").append(e.getKey()).append("\": ").append(e.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+}
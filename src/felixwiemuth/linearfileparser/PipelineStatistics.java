@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings of the two stages of a pipelined parse (see
+ * {@link LinearFileParser#_parsePipelined(java.io.Reader, int, int, PipelineStatistics)}):
+ * the reader stage reading and decoding lines into batches and the dispatch
+ * stage running the parser on them. If the dispatch stage waits most of the
+ * time, reading is the bottleneck; if the reader stage waits, processing is.
+ * It is thread-safe and accumulates the values of all parses it is passed to.
+ *
+ * @author Felix Wiemuth
+ */
+public class PipelineStatistics {
+
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong readerWaitNanos = new AtomicLong();
+    private final AtomicLong dispatchWaitNanos = new AtomicLong();
+
+    void batchRead(int lines, long readNanos, long waitNanos) {
+        if (lines > 0) {
+            this.lines.addAndGet(lines);
+            batches.incrementAndGet();
+        }
+        this.readNanos.addAndGet(readNanos);
+        readerWaitNanos.addAndGet(waitNanos);
+    }
+
+    void dispatchWaited(long nanos) {
+        dispatchWaitNanos.addAndGet(nanos);
+    }
+
+    /**
+     *
+     * @return the number of lines read by the reader stage
+     */
+    public long getLines() {
+        return lines.get();
+    }
+
+    /**
+     *
+     * @return the number of batches passed from the reader to the dispatch
+     * stage
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     *
+     * @return the time the reader stage spent reading and decoding lines
+     */
+    public long getReadNanos() {
+        return readNanos.get();
+    }
+
+    /**
+     *
+     * @return the time the reader stage waited because the buffer was full
+     */
+    public long getReaderWaitNanos() {
+        return readerWaitNanos.get();
+    }
+
+    /**
+     *
+     * @return the time the dispatch stage waited because the buffer was empty
+     */
+    public long getDispatchWaitNanos() {
+        return dispatchWaitNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "lines: " + getLines() + ", batches: " + getBatches()
+                + ", read: " + getReadNanos() / 1000000 + " ms"
+                + ", reader waiting: " + getReaderWaitNanos() / 1000000 + " ms"
+                + ", dispatch waiting: " + getDispatchWaitNanos() / 1000000 + " ms";
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A {@link StreamLineIterator} whose lines are read by a separate reader
+ * thread. The reader thread fills batches of lines into a bounded buffer, from
+ * which the iterator takes them, so reading and decoding the input overlaps
+ * with processing the lines. When the buffer is full, the reader thread waits
+ * for the parser to catch up, which bounds the memory used.
+ *
+ * The reader thread closes the reader when it ends, which is at the end of
+ * the input, after a read error or after {@link #close()}. A read error is
+ * thrown by {@link #readLine()} after the lines read before, any other
+ * exception or error of the reader thread is thrown wrapped in an
+ * {@link IOException}.
+ *
+ * @author Felix Wiemuth
+ */
+class PipelinedLineIterator extends StreamLineIterator {
+
+    /**
+     * Default number of lines per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    /**
+     * Default number of batches the buffer can hold.
+     */
+    public static final int DEFAULT_DEPTH = 8;
+
+    private static final class Batch {
+
+        private final String[] lines;
+        private final int size;
+        private final Throwable failure; // what ended the reader thread, null if none
+
+        Batch(String[] lines, int size, Throwable failure) {
+            this.lines = lines;
+            this.size = size;
+            this.failure = failure;
+        }
+    }
+
+    private static final Batch END = new Batch(new String[0], 0, null);
+
+    private final BlockingQueue<Batch> buffer;
+    private final PipelineStatistics statistics;
+    private final Thread readerThread;
+    private Batch batch; // the batch lines are currently taken from
+    private int position; // index of the next line in batch
+
+    /**
+     *
+     * @param reader the reader to read lines from
+     * @param batchSize the number of lines per batch
+     * @param depth the number of batches the buffer can hold
+     * @param window the maximum number of lines to keep in memory for
+     * iterating (at least 2)
+     * @param statistics receives the timings of both stages (may be null)
+     */
+    PipelinedLineIterator(final BufferedReader reader, final int batchSize, int depth, int window, PipelineStatistics statistics) {
+        super(window);
+        if (batchSize < 1 || depth < 1) {
+            throw new IllegalArgumentException("Batch size and depth must be positive.");
+        }
+        this.buffer = new ArrayBlockingQueue<>(depth);
+        this.statistics = statistics;
+        this.readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(reader, batchSize);
+            }
+        }, "LinearFileParser reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    private void read(BufferedReader reader, int batchSize) {
+        try {
+            boolean eof = false;
+            while (!eof) {
+                long start = System.nanoTime();
+                String[] lines = new String[batchSize];
+                int size = 0;
+                while (size < batchSize) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        eof = true;
+                        break;
+                    }
+                    lines[size++] = line;
+                }
+                long read = System.nanoTime();
+                if (size > 0) {
+                    buffer.put(new Batch(lines, size, null));
+                }
+                if (statistics != null) {
+                    statistics.batchRead(size, read - start, System.nanoTime() - read);
+                }
+            }
+            buffer.put(END);
+        } catch (InterruptedException ex) {
+            // closed
+        } catch (Throwable ex) { // also unchecked exceptions of the reader, which would otherwise leave the parser waiting
+            try {
+                buffer.put(new Batch(null, 0, ex));
+            } catch (InterruptedException ignored) {
+                // closed
+            }
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+                // nothing to do when closing the input fails
+            }
+        }
+    }
+
+    @Override
+    protected CharSequence readLine() throws IOException {
+        if (batch == END) {
+            return null;
+        }
+        if (batch == null || position == batch.size) {
+            Batch next = buffer.poll();
+            if (next == null) {
+                long start = System.nanoTime();
+                try {
+                    next = buffer.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the reader thread.");
+                }
+                if (statistics != null) {
+                    statistics.dispatchWaited(System.nanoTime() - start);
+                }
+            }
+            if (next.failure instanceof IOException) {
+                throw (IOException) next.failure;
+            }
+            if (next.failure != null) {
+                throw new IOException("The reader thread failed.", next.failure);
+            }
+            batch = next;
+            position = 0;
+            if (batch == END) {
+                return null;
+            }
+        }
+        String line = batch.lines[position];
+        batch.lines[position++] = null;
+        return line;
+    }
+
+    /**
+     * Stops the reader thread, which then closes the reader.
+     */
+    @Override
+    public void close() throws IOException {
+        readerThread.interrupt();
+        buffer.clear();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ * A bounded channel passing records from a parser to a consumer on another
+ * thread. Key processors emit records with {@link #emit(Object)}, which
+ * blocks while the channel is full, so the parser (and with it reading from
+ * the input) is paused until the consumer has taken records. This keeps the
+ * memory used bounded when the consumer is slower than the parser.
+ *
+ * The consumer takes records with {@link #take()} until it returns null. An
+ * exception which ended parsing is thrown by {@link #take()} after all
+ * records emitted before have been taken. If the consumer is not interested
+ * in further records, it calls {@link #cancel()}, which makes
+ * {@link #emit(Object)} throw {@link CancellationException} and thereby
+ * aborts the parse.
+ *
+ * A typical use is to let the processors of a parser emit into a channel and
+ * to start parsing with {@link #start(Executor, Producer)}.
+ *
+ * @author Felix Wiemuth
+ * @param <T> the type of the records
+ */
+public class RecordChannel<T> {
+
+    /**
+     * Produces the records of a channel, usually by running a parser whose
+     * processors emit into the channel.
+     *
+     * @param <T> the type of the records
+     */
+    public interface Producer<T> {
+
+        /**
+         *
+         * @param channel the channel to emit the records into
+         * @throws IOException
+         * @throws ParseException
+         */
+        void produce(RecordChannel<T> channel) throws IOException, ParseException;
+    }
+
+    private final ArrayDeque<T> queue;
+    private final int capacity;
+    private boolean complete;
+    private boolean cancelled;
+    private Exception failure;
+
+    /**
+     *
+     * @param capacity the maximum number of records buffered before
+     * {@link #emit(Object)} blocks
+     */
+    public RecordChannel(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.queue = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Emit a record, waiting while the channel is full.
+     *
+     * @param record must not be null
+     * @throws CancellationException if the channel was cancelled by the
+     * consumer or the emitting thread was interrupted while waiting (in which
+     * case the interrupt status is set again)
+     */
+    public synchronized void emit(T record) {
+        if (record == null) {
+            throw new NullPointerException();
+        }
+        if (complete) {
+            throw new IllegalStateException("The channel is already complete.");
+        }
+        while (queue.size() == capacity && !cancelled) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the consumer.");
+            }
+        }
+        if (cancelled) {
+            throw new CancellationException("The channel was cancelled.");
+        }
+        queue.add(record);
+        notifyAll();
+    }
+
+    /**
+     * Signal that no more records will be emitted.
+     */
+    public synchronized void complete() {
+        complete = true;
+        notifyAll();
+    }
+
+    /**
+     * Signal that producing the records failed. The exception is thrown to the
+     * consumer after the records emitted before.
+     *
+     * @param failure
+     */
+    public void fail(ParseException failure) {
+        setFailure(failure);
+    }
+
+    /**
+     * Signal that producing the records failed. The exception is thrown to the
+     * consumer after the records emitted before.
+     *
+     * @param failure
+     */
+    public void fail(IOException failure) {
+        setFailure(failure);
+    }
+
+    /**
+     * Signal that producing the records failed. The exception is thrown to the
+     * consumer after the records emitted before.
+     *
+     * @param failure
+     */
+    public void fail(RuntimeException failure) {
+        setFailure(failure);
+    }
+
+    /**
+     *
+     * @param failure a {@link ParseException}, {@link IOException} or
+     * {@link RuntimeException}
+     */
+    private synchronized void setFailure(Exception failure) {
+        this.failure = failure;
+        complete = true;
+        notifyAll();
+    }
+
+    /**
+     * Take the next record, waiting until one is available.
+     *
+     * @return the next record or null if the channel is complete and all
+     * records have been taken
+     * @throws ParseException if the producer failed with this exception
+     * @throws IOException if the producer failed with this exception
+     * @throws InterruptedException
+     */
+    public synchronized T take() throws ParseException, IOException, InterruptedException {
+        while (queue.isEmpty() && !complete) {
+            wait();
+        }
+        if (!queue.isEmpty()) {
+            notifyAll();
+            return queue.poll();
+        }
+        if (failure instanceof ParseException) {
+            throw (ParseException) failure;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        return null;
+    }
+
+    /**
+     * Stop receiving records. Buffered records are discarded and a producer
+     * waiting in or later calling {@link #emit(Object)} gets a
+     * {@link CancellationException}.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        queue.clear();
+        notifyAll();
+    }
+
+    /**
+     *
+     * @return the number of records currently buffered
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Run a producer on an executor, completing or failing this channel when it
+     * returns. Returns immediately, the records can then be taken from this
+     * channel on the calling thread.
+     *
+     * @param executor
+     * @param producer
+     */
+    public void start(Executor executor, final Producer<T> producer) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    producer.produce(RecordChannel.this);
+                    complete();
+                } catch (IOException ex) {
+                    fail(ex);
+                } catch (ParseException ex) {
+                    fail(ex);
+                } catch (RuntimeException ex) {
+                    fail(ex);
+                } catch (Error err) { // do not leave the consumer waiting
+                    fail(new IllegalStateException("The producer failed.", err));
+                    throw err;
+                }
+            }
+        });
+    }
+}
@@ -33,12 +33,24 @@ public class RepeatedKeyException extends IllegalKeyException {
         this.firstOccurrence = firstOccurrence;
     }
 
+    /**
+     *
+     * @param line
+     * @param key
+     * @param firstOccurrence
+     * @param stackTrace whether to record the stack trace
+     */
+    public RepeatedKeyException(int line, String key, int firstOccurrence, boolean stackTrace) {
+        super(line, key, stackTrace);
+        this.firstOccurrence = firstOccurrence;
+    }
+
     public int getFirstOccurrence() {
         return firstOccurrence;
     }
 
     @Override
     protected String getMsg() {
-        return String.format(getRp().getString(R.REPEATED_KEY), getKey(), firstOccurrence);
+        return format(R.REPEATED_KEY, getKey(), firstOccurrence);
     }
 }
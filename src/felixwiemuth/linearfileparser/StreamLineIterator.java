@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link ListIterator} over lines which are read on demand from a
+ * {@link BufferedReader} (or another source, see {@link #readLine()}). Only a bounded window of the most recently read lines
+ * is kept in memory, so processors can still go back with
+ * {@link #previous()} (and forth again) as long as they stay inside this
+ * window. Lines are never read before they are requested (apart from a single
+ * line of lookahead needed to answer {@link #hasNext()}).
+ *
+ * Indices are absolute line indices in the input, i.e. {@link #nextIndex()}
+ * behaves as for an iterator over the list of all lines.
+ *
+ * The underlying list cannot be modified structurally: {@link #add(String)}
+ * and {@link #remove()} throw {@link UnsupportedOperationException}.
+ * {@link #set(String)} is supported for lines still inside the window.
+ *
+ * @author Felix Wiemuth
+ */
+class StreamLineIterator implements LineViewIterator {
+
+    /**
+     * Thrown by the iterator methods when reading from the underlying reader
+     * fails. The {@link IOException} is available as cause.
+     */
+    static class ReadFailure extends RuntimeException {
+
+        ReadFailure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Default number of lines kept in the window.
+     */
+    public static final int DEFAULT_WINDOW = 64;
+
+    private final BufferedReader reader;
+    private final CharSequence[] window; // ring buffer, line i is at i % window.length
+    private final long[] positions; // source positions of the lines in the window (see position())
+    private int base; // index of the first line available (lines before were skipped or not part of the input)
+    private int read; // index after the last line read from the reader
+    private int cursor; // index of the line returned by the next call to next()
+    private int lastReturned = -1;
+    private boolean eof;
+
+    /**
+     *
+     * @param reader the reader to read lines from
+     * @param window the maximum number of lines to keep in memory (at least 2:
+     * the current line and one line of lookahead)
+     */
+    StreamLineIterator(BufferedReader reader, int window) {
+        if (window < 2) {
+            throw new IllegalArgumentException("Window must contain at least 2 lines.");
+        }
+        this.reader = reader;
+        this.window = new CharSequence[window];
+        this.positions = new long[window];
+    }
+
+    /**
+     * Create an iterator without a reader. Subclasses using this constructor
+     * must override {@link #readLine()} and {@link #close()}.
+     *
+     * @param window the maximum number of lines to keep in memory (at least 2)
+     */
+    protected StreamLineIterator(int window) {
+        this(null, window);
+    }
+
+    StreamLineIterator(BufferedReader reader) {
+        this(reader, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Set the index of the first line read, when the underlying source does not
+     * start with the first line of the input. Must be called before any line
+     * is read.
+     *
+     * @param index
+     */
+    void setFirstIndex(int index) {
+        if (read != base) {
+            throw new IllegalStateException("Lines were already read.");
+        }
+        base = read = cursor = index;
+    }
+
+    /**
+     * Read the next line from the underlying source. Subclasses may override
+     * this to obtain lines from somewhere else than the reader given at
+     * construction. The returned sequence must not change afterwards.
+     *
+     * @return the next line or null if the end of input was reached
+     * @throws IOException
+     */
+    protected CharSequence readLine() throws IOException {
+        return reader.readLine();
+    }
+
+    /**
+     * Get the position in the underlying source (e.g. a byte offset in a file)
+     * of the line returned by the next call to {@link #readLine()}. Subclasses
+     * reading from a source supporting positions override this. The default
+     * implementation returns -1.
+     *
+     * @return the position or -1 if not supported
+     */
+    long position() {
+        return -1;
+    }
+
+    /**
+     *
+     * @return the position in the underlying source (see {@link #position()})
+     * of the line returned by the next call to {@link #next()} or -1 if not
+     * supported
+     */
+    long nextPosition() {
+        return cursor < read ? positions[cursor % window.length] : position();
+    }
+
+    /**
+     * Skip lines in the underlying source without returning them. Subclasses
+     * which can detect line boundaries faster than by reading lines may
+     * override this. The default implementation does not skip any lines.
+     *
+     * @param prefix the prefix of the line to stop at (null to not stop at
+     * any line)
+     * @param max the maximum number of lines to skip
+     * @return the number of lines skipped, where the line after the skipped
+     * lines (if any) is read next by {@link #readLine()}
+     * @throws IOException
+     */
+    protected int skipSource(String prefix, int max) throws IOException {
+        return 0;
+    }
+
+    /**
+     * Skip lines until the next line starting with the given prefix (which is
+     * not skipped) or until the line with index {@code end} would be returned
+     * next. Skipped lines can no longer be accessed with {@link #previous()}.
+     *
+     * @param prefix the prefix (null to skip until {@code end})
+     * @param end
+     */
+    void skipLines(String prefix, int end) {
+        while (true) {
+            while (cursor < read && cursor < end) {
+                if (prefix != null && startsWith(window[cursor % window.length], prefix)) {
+                    return;
+                }
+                cursor++;
+            }
+            if (cursor >= end || eof) {
+                return;
+            }
+            int skipped;
+            try {
+                skipped = skipSource(prefix, end - cursor);
+            } catch (IOException ex) {
+                throw new ReadFailure(ex);
+            }
+            if (skipped > 0) {
+                read += skipped;
+                cursor = read;
+                base = read;
+                lastReturned = -1;
+            } else if (!fill()) {
+                return;
+            }
+        }
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix) {
+        if (line.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read one more line into the window if available.
+     *
+     * @return whether a line was read
+     */
+    private boolean fill() {
+        if (eof) {
+            return false;
+        }
+        CharSequence line;
+        long position = position();
+        try {
+            line = readLine();
+        } catch (IOException ex) {
+            throw new ReadFailure(ex);
+        }
+        if (line == null) {
+            eof = true;
+            return false;
+        }
+        window[read % window.length] = line;
+        positions[read % window.length] = position;
+        read++;
+        return true;
+    }
+
+    /**
+     * Index of the oldest line still available in the window.
+     */
+    private int first() {
+        return Math.max(base, read - window.length);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < read || fill();
+    }
+
+    @Override
+    public String next() {
+        return nextView().toString();
+    }
+
+    @Override
+    public CharSequence nextView() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        lastReturned = cursor;
+        return window[cursor++ % window.length];
+    }
+
+    @Override
+    public boolean hasPrevious() {
+        return cursor > first();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NoSuchElementException also if the previous line has already
+     * left the window
+     */
+    @Override
+    public String previous() {
+        if (!hasPrevious()) {
+            throw new NoSuchElementException(cursor > base ? "Line " + cursor + " is no longer buffered (window size " + window.length + ")." : null);
+        }
+        lastReturned = --cursor;
+        return window[cursor % window.length].toString();
+    }
+
+    @Override
+    public int nextIndex() {
+        return cursor;
+    }
+
+    @Override
+    public int previousIndex() {
+        return cursor - 1;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Lines cannot be removed when streaming.");
+    }
+
+    @Override
+    public void set(String e) {
+        if (lastReturned < first()) {
+            throw new IllegalStateException();
+        }
+        window[lastReturned % window.length] = e;
+    }
+
+    @Override
+    public void add(String e) {
+        throw new UnsupportedOperationException("Lines cannot be added when streaming.");
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.Arrays;
+
+/**
+ * A bounded table of strings used to deduplicate arguments drawn from a small
+ * vocabulary (see {@link LinearFileParser#setSymbolTable(SymbolTable)}). A
+ * range of characters is looked up by its hash before a string is created, so
+ * a repeated argument is neither allocated again nor retained more than once
+ * by processors storing it.
+ *
+ * The table has a fixed number of slots. Every string can be stored in one of
+ * two slots determined by its hash. A new string is stored in a free one of
+ * its slots. If both are taken, it is stored in its first slot and the string
+ * found there is moved to its own other slot, evicting the string found
+ * there. A string stays in the table when it is moved, so a frequent string
+ * is only lost when it happens to be evicted and is stored again with its next
+ * use, while values of high cardinality mostly replace each other. Strings
+ * longer than a maximum length are not stored.
+ *
+ * The table can be used by several threads at the same time (e.g. by parallel
+ * parses or parsers sharing a definition). The statistics are not
+ * synchronized and may be slightly too low in that case.
+ *
+ * @author Felix Wiemuth
+ */
+public final class SymbolTable {
+
+    private final String[] slots;
+    private final int mask;
+    private final int maxLength;
+    private long hits;
+    private long misses;
+    private long skipped;
+
+    /**
+     *
+     * @param capacity the number of strings the table can hold (rounded up to
+     * a power of two)
+     * @param maxLength the maximum length of strings to be stored
+     */
+    public SymbolTable(int capacity, int maxLength) {
+        if (capacity < 2 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 2 and 2^30.");
+        }
+        this.slots = new String[Integer.highestOneBit(capacity - 1) << 1];
+        this.mask = slots.length - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Get a string with the characters of a range, which is taken from the
+     * table if it contains such a string.
+     *
+     * @param s
+     * @param start
+     * @param end
+     * @return
+     */
+    public String intern(CharSequence s, int start, int end) {
+        int length = end - start;
+        if (length > maxLength) {
+            skipped++;
+            return s.subSequence(start, end).toString();
+        }
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        int first = (h ^ h >>> 16) & mask;
+        int second = alternate(h, first);
+        String candidate = slots[first];
+        if (candidate != null && matches(candidate, s, start, end)) {
+            hits++;
+            return candidate;
+        }
+        String other = slots[second];
+        if (other != null && matches(other, s, start, end)) {
+            hits++;
+            return other;
+        }
+        misses++;
+        String string = s.subSequence(start, end).toString();
+        if (candidate == null) {
+            slots[first] = string;
+        } else if (other == null) {
+            slots[second] = string;
+        } else {
+            slots[alternate(candidate.hashCode(), first)] = candidate; // String.hashCode() is the hash computed above
+            slots[first] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Same as {@link #intern(CharSequence, int, int)} for a whole sequence.
+     *
+     * @param s
+     * @return
+     */
+    public String intern(CharSequence s) {
+        return intern(s, 0, s.length());
+    }
+
+    /**
+     *
+     * @param h the hash of a string
+     * @param slot one of the slots of the string
+     * @return the other slot of the string (differs from the given slot in
+     * the lowest bit)
+     */
+    private int alternate(int h, int slot) {
+        return (slot ^ (h >>> 11 | 1)) & mask;
+    }
+
+    private static boolean matches(String string, CharSequence s, int start, int end) {
+        if (string.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) != s.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return the number of lookups which returned a string from the table
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     *
+     * @return the number of lookups which created a new string
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     *
+     * @return the number of strings which were too long to be looked up
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     *
+     * @return the ratio of hits to all lookups (including skipped strings)
+     * or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long total = hits + misses + skipped;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Remove all strings and reset the statistics.
+     */
+    public void clear() {
+        Arrays.fill(slots, null);
+        hits = 0;
+        misses = 0;
+        skipped = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", skipped: " + skipped + ", hit rate: " + getHitRate();
+    }
+}
@@ -33,12 +33,24 @@ public class UnknownKeyException extends IllegalKeyException {
         this.section = section;
     }
 
+    /**
+     *
+     * @param section
+     * @param line
+     * @param key
+     * @param stackTrace whether to record the stack trace
+     */
+    public UnknownKeyException(String section, int line, String key, boolean stackTrace) {
+        super(line, key, stackTrace);
+        this.section = section;
+    }
+
     public String getSection() {
         return section;
     }
 
     @Override
     protected String getMsg() {
-        return String.format(getRp().getString(R.UNKNOWN_KEY), getKey(), getSection());
+        return format(R.UNKNOWN_KEY, getKey(), getSection());
     }
 }
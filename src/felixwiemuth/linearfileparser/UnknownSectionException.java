@@ -33,13 +33,24 @@ public class UnknownSectionException extends ParseException {
         this.sectionID = sectionID;
     }
 
+    /**
+     *
+     * @param line
+     * @param sectionID
+     * @param stackTrace whether to record the stack trace
+     */
+    public UnknownSectionException(int line, String sectionID, boolean stackTrace) {
+        super(line, null, stackTrace);
+        this.sectionID = sectionID;
+    }
+
     public String getSectionID() {
         return sectionID;
     }
 
     @Override
     protected String getMsg() {
-        return String.format(getRp().getString(R.UNKNOWN_SECTION), sectionID);
+        return format(R.UNKNOWN_SECTION, sectionID);
     }
 
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A {@link StreamLineIterator} reading UTF-8 encoded lines from an input
+ * stream. Bytes are read into a large buffer in which line terminators are
+ * searched for directly. Lines consisting of ASCII characters only are
+ * converted to strings without a decoder, only lines containing other
+ * characters are decoded as UTF-8 (replacing malformed input as
+ * {@link java.io.InputStreamReader} does).
+ *
+ * As with {@link java.io.BufferedReader#readLine()}, a line is terminated by
+ * '\n', '\r' or "\r\n".
+ *
+ * @author Felix Wiemuth
+ */
+class Utf8LineIterator extends StreamLineIterator {
+
+    /**
+     * Default size of the byte buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] buffer;
+    private int start; // index of the first byte not yet returned
+    private int end; // index after the last byte read
+    private boolean eof;
+    private boolean skipLF; // the last line ended with '\r' which may be followed by '\n'
+
+    /**
+     *
+     * @param in the stream to read from (is closed by {@link #close()})
+     * @param bufferSize the initial size of the byte buffer (it grows if a
+     * line does not fit)
+     * @param window the maximum number of lines to keep in memory (at least 2)
+     */
+    Utf8LineIterator(InputStream in, int bufferSize, int window) {
+        super(window);
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        }
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    Utf8LineIterator(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Wrap a stream such that gzip-compressed data is decompressed
+     * transparently. The format is detected by the magic number at the
+     * beginning of the stream, other data is passed through unchanged.
+     * Zstandard-compressed data is detected as well but rejected, as there is
+     * no decompressor available in the Java platform.
+     *
+     * @param in
+     * @return
+     * @throws IOException if the stream cannot be read or is compressed with
+     * Zstandard
+     */
+    static InputStream decompress(InputStream in) throws IOException {
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in);
+        byte[] magic = new byte[4];
+        buffered.mark(magic.length);
+        int n = 0;
+        while (n < magic.length) {
+            int r = buffered.read(magic, n, magic.length - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        buffered.reset();
+        if (n >= 2 && magic[0] == (byte) 0x1f && magic[1] == (byte) 0x8b) {
+            return new GZIPInputStream(buffered, DEFAULT_BUFFER_SIZE);
+        }
+        if (n == 4 && magic[0] == (byte) 0x28 && magic[1] == (byte) 0xb5 && magic[2] == (byte) 0x2f && magic[3] == (byte) 0xfd) {
+            throw new IOException("Zstandard-compressed input is not supported, decompress it before passing it to the parser.");
+        }
+        return buffered;
+    }
+
+    /**
+     * Move the unread bytes to the beginning of the buffer (growing it if it
+     * is full) and read more bytes.
+     *
+     * @return the number of positions the unread bytes were moved by
+     * @throws IOException
+     */
+    private int fill() throws IOException {
+        int shift = start;
+        if (shift > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        } else if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        int n = in.read(buffer, end, buffer.length - end);
+        if (n < 0) {
+            eof = true;
+        } else {
+            end += n;
+        }
+        return shift;
+    }
+
+    @Override
+    protected CharSequence readLine() throws IOException {
+        if (skipLF) {
+            if (start == end && !eof) {
+                fill();
+            }
+            if (start < end && buffer[start] == '\n') {
+                start++;
+            }
+            skipLF = false;
+        }
+        int scan = start;
+        int bits = 0; // negative if a byte outside ASCII occurs
+        while (true) {
+            while (scan < end) {
+                byte b = buffer[scan];
+                if (b == '\n' || b == '\r') {
+                    String line = toString(start, scan, bits);
+                    start = scan + 1;
+                    if (b == '\r') {
+                        if (start < end) {
+                            if (buffer[start] == '\n') {
+                                start++;
+                            }
+                        } else {
+                            skipLF = true;
+                        }
+                    }
+                    return line;
+                }
+                bits |= b;
+                scan++;
+            }
+            if (eof) {
+                if (start == end) {
+                    return null;
+                }
+                String line = toString(start, end, bits);
+                start = end;
+                return line;
+            }
+            scan -= fill();
+        }
+    }
+
+    private String toString(int from, int to, int bits) {
+        if (bits >= 0) {
+            return new String(buffer, from, to - from, StandardCharsets.ISO_8859_1);
+        }
+        try {
+            return decoder.decode(ByteBuffer.wrap(buffer, from, to - from)).toString();
+        } catch (CharacterCodingException ex) { // cannot happen when replacing malformed input
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser.localization;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link ResourceProvider} which caches the strings of another provider
+ * (by default {@link DefaultResourceProvider}) and their parsed
+ * {@link MessageTemplate}s. All strings are obtained from the other provider
+ * once per default locale (see {@link Locale#getDefault()}), so the other
+ * provider should only depend on the default locale. This class is
+ * thread-safe.
+ *
+ * @author Felix Wiemuth
+ */
+public class CachingResourceProvider implements ResourceProvider {
+
+    private static final class Entry {
+
+        private final EnumMap<R, String> strings = new EnumMap<>(R.class);
+        private final EnumMap<R, MessageTemplate> templates = new EnumMap<>(R.class);
+    }
+
+    private final ResourceProvider provider;
+    private final ConcurrentMap<Locale, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @param provider the provider to obtain the strings from
+     */
+    public CachingResourceProvider(ResourceProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Cache the strings of a {@link DefaultResourceProvider}.
+     */
+    public CachingResourceProvider() {
+        this(new DefaultResourceProvider());
+    }
+
+    private Entry getEntry() {
+        Locale locale = Locale.getDefault();
+        Entry entry = entries.get(locale);
+        if (entry == null) {
+            entry = new Entry();
+            for (R key : R.values()) {
+                String s;
+                try {
+                    s = provider.getString(key);
+                } catch (MissingResourceException ex) {
+                    continue; // not cached, so the exception occurs again when the string is used
+                }
+                entry.strings.put(key, s);
+                entry.templates.put(key, MessageTemplate.compile(locale, s));
+            }
+            Entry existing = entries.putIfAbsent(locale, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public String getString(R key) {
+        String s = getEntry().strings.get(key);
+        return s != null ? s : provider.getString(key);
+    }
+
+    /**
+     *
+     * @param key
+     * @return the string for the given key as parsed template
+     */
+    public MessageTemplate getTemplate(R key) {
+        MessageTemplate template = getEntry().templates.get(key);
+        return template != null ? template : MessageTemplate.compile(Locale.getDefault(), provider.getString(key));
+    }
+
+    /**
+     * Discard all cached strings, e.g. after the resources of the underlying
+     * provider changed.
+     */
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser.localization;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Formattable;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A format string as used by {@link String#format(String, Object...)} which is
+ * parsed once and can then be applied to arguments repeatedly. The
+ * conversions used in the resources of LinearFileParser ("%s", "%d", their
+ * indexed forms like "%2$s" and "%%") are applied directly, for all other
+ * format strings {@link String#format(Locale, String, Object...)} is used.
+ *
+ * @author Felix Wiemuth
+ */
+public final class MessageTemplate {
+
+    private final Locale locale;
+    private final String pattern;
+    private final String[] literals; // literals[i] precedes argument argIndices[i], the last literal ends the message
+    private final int[] argIndices; // null if the pattern is formatted with String.format
+
+    private MessageTemplate(Locale locale, String pattern, String[] literals, int[] argIndices) {
+        this.locale = locale;
+        this.pattern = pattern;
+        this.literals = literals;
+        this.argIndices = argIndices;
+    }
+
+    /**
+     * Parse a format string.
+     *
+     * @param locale the locale to format with
+     * @param pattern
+     * @return
+     */
+    public static MessageTemplate compile(Locale locale, String pattern) {
+        // numbers are only formatted directly if the locale uses ASCII digits
+        boolean simpleNumbers = DecimalFormatSymbols.getInstance(locale).getZeroDigit() == '0';
+        List<String> literals = new ArrayList<>();
+        List<Integer> argIndices = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int nextArg = 0;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            if (i == pattern.length()) {
+                return new MessageTemplate(locale, pattern, null, null);
+            }
+            if (pattern.charAt(i) == '%') {
+                literal.append('%');
+                i++;
+                continue;
+            }
+            int arg;
+            int j = i;
+            while (j < pattern.length() && pattern.charAt(j) >= '0' && pattern.charAt(j) <= '9') {
+                j++;
+            }
+            if (j > i && j < pattern.length() && pattern.charAt(j) == '$') {
+                arg = Integer.parseInt(pattern.substring(i, j)) - 1;
+                i = j + 1;
+            } else if (j == i) {
+                arg = nextArg++;
+            } else {
+                return new MessageTemplate(locale, pattern, null, null); // width
+            }
+            if (arg < 0 || i == pattern.length()) {
+                return new MessageTemplate(locale, pattern, null, null);
+            }
+            char conversion = pattern.charAt(i++);
+            if (conversion != 's' && !(conversion == 'd' && simpleNumbers)) {
+                return new MessageTemplate(locale, pattern, null, null);
+            }
+            literals.add(literal.toString());
+            literal.setLength(0);
+            argIndices.add(conversion == 'd' ? -arg - 1 : arg); // negative for numbers
+        }
+        literals.add(literal.toString());
+        int[] indices = new int[argIndices.size()];
+        for (int k = 0; k < indices.length; k++) {
+            indices[k] = argIndices.get(k);
+        }
+        return new MessageTemplate(locale, pattern, literals.toArray(new String[literals.size()]), indices);
+    }
+
+    /**
+     * Format the given arguments. The result is the same as that of
+     * {@link String#format(Locale, String, Object...)} with the locale and
+     * pattern of this template: arguments are only appended directly if the
+     * formatter would append their string representation, i.e. for "%s" if
+     * they are not {@link Formattable} and for "%d" if they are null or of
+     * type {@link Byte}, {@link Short}, {@link Integer} or {@link Long} and the
+     * locale uses ASCII digits. In all other cases, including missing
+     * arguments, the formatter is used.
+     *
+     * @param args
+     * @return
+     */
+    public String format(Object... args) {
+        if (argIndices == null) {
+            return String.format(locale, pattern, args);
+        }
+        StringBuilder sb = new StringBuilder(pattern.length() + 16 * argIndices.length);
+        for (int i = 0; i < argIndices.length; i++) {
+            sb.append(literals[i]);
+            int index = argIndices[i];
+            if (index < 0) {
+                index = -index - 1;
+                if (index >= args.length) {
+                    return String.format(locale, pattern, args); // let the formatter throw the exception
+                }
+                Object arg = args[index];
+                if (!(arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte) && arg != null) {
+                    return String.format(locale, pattern, args); // let the formatter decide
+                }
+                sb.append(arg);
+            } else {
+                if (index >= args.length || args[index] instanceof Formattable) {
+                    return String.format(locale, pattern, args); // let the formatter throw the exception or call formatTo
+                }
+                sb.append(args[index]);
+            }
+        }
+        sb.append(literals[argIndices.length]);
+        return sb.toString();
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
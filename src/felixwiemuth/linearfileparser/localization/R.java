@@ -28,5 +28,7 @@ public enum R {
     UNKNOWN_SECTION,
     UNKNOWN_KEY,
     REPEATED_KEY,
-    MISSING_ARGUMENT;
+    MISSING_ARGUMENT,
+    ILLEGAL_ARGUMENT,
+    UNTERMINATED_BLOCK;
 }
@@ -97,6 +97,10 @@ public class TestParser1 extends LinearFileParser {
         });
     }
 
+    public TestParser1(TestParser1 definition) {
+        super(definition);
+    }
+
     public void parse(File file) throws IOException, FileNotFoundException, UnknownKeyException, UnknownSectionException, ParseException {
         _parse(file);
     }
@@ -19,6 +19,7 @@ package felixwiemuth.linearfileparser;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ListIterator;
 
 /**
@@ -117,4 +118,8 @@ public class TestParser3 extends LinearFileParser {
         _parse(file);
     }
 
+    public void parseStream(InputStream inputStream) throws IOException, UnknownKeyException, UnknownSectionException, ParseException {
+        _parseStream(inputStream);
+    }
+
 }
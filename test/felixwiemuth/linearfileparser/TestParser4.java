@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 Felix Wiemuth
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.linearfileparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * A parser recording the processed lines, to compare the results of
+ * different ways of parsing. Has a one-shot key "once" in section "second".
+ *
+ * @author Felix Wiemuth
+ */
+public class TestParser4 extends LinearFileParser {
+
+    private final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+    public TestParser4() {
+        this(false);
+    }
+
+    /**
+     *
+     * @param independent whether to declare the sections independent
+     */
+    public TestParser4(boolean independent) {
+        super("#", "@", "@", "first", true);
+
+        // sections
+        addSection("first", new Record("enter"), new Record("leave"), independent);
+        addSection("second", new Record("enter"), new Record("leave"), independent);
+
+        // global keys
+        addKeyProcessor(new KeyProcessor("print") {
+            @Override
+            public void process(String arg, ListIterator<String> it) throws ParseException {
+                record("print " + arg);
+            }
+        });
+
+        // local keys
+        addKeyProcessor("second", new KeyProcessor("once", true) {
+            @Override
+            public void process(String arg, ListIterator<String> it) throws ParseException {
+                record("once " + arg);
+            }
+        });
+    }
+
+    public TestParser4(TestParser4 definition) {
+        super(definition);
+    }
+
+    /**
+     * Get the recorded lines of all parses with this parser, each as
+     * "&lt;section&gt; &lt;line&gt; &lt;event&gt;".
+     *
+     * @return
+     */
+    public List<String> getLog() {
+        return log;
+    }
+
+    /**
+     * Record an event for the current line with the parser executing the
+     * parse (which may share the definition of this parser).
+     *
+     * @param event
+     */
+    protected void record(String event) {
+        ((TestParser4) getActiveParser()).log.add(getCurrentSectionID() + " " + getCurrentLineNumber() + " " + event);
+    }
+
+    private class Record implements Action {
+
+        private final String event;
+
+        public Record(String event) {
+            this.event = event;
+        }
+
+        @Override
+        public void run(ListIterator<String> it) {
+            record(event);
+        }
+    }
+
+}
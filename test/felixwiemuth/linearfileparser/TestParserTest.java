@@ -16,9 +16,52 @@
  */
 package felixwiemuth.linearfileparser;
 
+import felixwiemuth.linearfileparser.localization.CachingResourceProvider;
+import felixwiemuth.linearfileparser.localization.MessageTemplate;
+import felixwiemuth.linearfileparser.localization.R;
+import felixwiemuth.linearfileparser.localization.ResourceProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeClass;
@@ -80,6 +123,1507 @@ public class TestParserTest {
         parser.parse(new File("test/felixwiemuth/linearfileparser/TestFile3"));
     }
 
+    /**
+     * Asserts that {@link TestParser1} can parse the valid test file twice,
+     * once with a parser sharing its definition.
+     *
+     * @throws IOException
+     * @throws FileNotFoundException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    @Test
+    public void test1Reuse() throws IOException, FileNotFoundException, UnknownSectionException, ParseException {
+        TestParser1 parser = new TestParser1();
+        parser.parse(new File("test/felixwiemuth/linearfileparser/TestFile1"));
+        parser.parse(new File("test/felixwiemuth/linearfileparser/TestFile1"));
+        new TestParser1(parser).parse(new File("test/felixwiemuth/linearfileparser/TestFile1"));
+    }
+
+    /**
+     * Asserts that a one-shot key of {@link TestParser4} is not reported as
+     * repeated when parsing again or with a parser sharing the definition,
+     * but is when used twice in a section.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void test4OneShotReuse() throws ParseException {
+        List<String> lines = Arrays.asList("@print a", "@second", "@once b");
+        TestParser4 parser = new TestParser4();
+        parser._parse(lines);
+        parser._parse(lines);
+        TestParser4 copy = new TestParser4(parser);
+        copy._parse(lines);
+        assertEquals(copy.getLog(), Arrays.asList("first 0 enter", "first 1 print a", "first 2 leave", "second 2 enter", "second 3 once b", "second 3 leave"));
+        try {
+            copy._parse(Arrays.asList("@second", "@once b", "@once c"));
+            fail("repeated one-shot key not reported");
+        } catch (RepeatedKeyException ex) {
+            assertEquals(ex.getLine(), 3);
+        }
+    }
+
+    /**
+     * Asserts that {@link TestParser3} does not throw exceptions for the valid
+     * test file when streaming the input.
+     *
+     * @throws IOException
+     * @throws FileNotFoundException
+     * @throws UnknownSectionException
+     * @throws ParseException
+     */
+    @Test
+    public void test3Stream() throws IOException, FileNotFoundException, UnknownSectionException, ParseException {
+        TestParser3 parser = new TestParser3();
+        parser.parseStream(new FileInputStream("test/felixwiemuth/linearfileparser/TestFile3"));
+    }
+
+    /**
+     * Asserts that {@link TestParser1} collects all errors in
+     * error-collecting mode and stops when the maximum number of errors is
+     * reached.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void test1CollectErrors() throws ParseException {
+        List<String> lines = Arrays.asList("@print a", "@unknown", "no key", "@switchSection second", "@switchSection first", "@print b", "@unknown");
+        TestParser1 parser = new TestParser1();
+        parser.setMaxErrors(10);
+        parser._parse(lines);
+        List<ParseException> errors = parser.getErrorReport().getErrors();
+        assertEquals(errors.size(), 3);
+        assertTrue(errors.get(0) instanceof UnknownKeyException);
+        assertTrue(errors.get(1) instanceof IllegalLineException);
+        assertEquals(errors.get(2).getLine(), 7);
+        assertFalse(parser.getErrorReport().isLimitReached());
+
+        parser.setMaxErrors(2);
+        parser._parse(lines);
+        assertEquals(parser.getErrorReport().size(), 2);
+        assertTrue(parser.getErrorReport().isLimitReached());
+    }
+
+    /**
+     * Asserts that {@link MappedLineIterator} splits lines at LF, CRLF and CR,
+     * decodes non-ASCII lines and reads lines longer than the mapped window,
+     * and that parsing the mapped file gives the same result as parsing the
+     * lines.
+     *
+     * @throws IOException
+     * @throws ParseException
+     */
+    @Test
+    public void testMapped() throws IOException, ParseException {
+        List<String> lines = Arrays.asList("@print a", "@print \u00e4\u20ac", "", "@second", "@print a line longer than the window", "@once x", "@print end");
+        File file = createFile("@print a\n@print \u00e4\u20ac\r\n\r@second\r@print a line longer than the window\r\n@once x\n@print end");
+        MappedLineIterator it = new MappedLineIterator(new FileInputStream(file).getChannel(), StandardCharsets.UTF_8, 4, 2);
+        List<String> read = new ArrayList<>();
+        while (it.hasNext()) {
+            read.add(it.next());
+        }
+        it.close();
+        assertEquals(read, lines);
+
+        TestParser4 expected = new TestParser4();
+        expected._parse(lines);
+        TestParser4 parser = new TestParser4();
+        parser._parseMapped(file);
+        assertEquals(parser.getLog(), expected.getLog());
+    }
+
+    /**
+     * Asserts that {@link LineClassifier} gives the comment prefix precedence
+     * over sections, sections precedence over keys and section specific key
+     * processors precedence over global ones.
+     */
+    @Test
+    public void testClassifierPrecedence() {
+        LinearFileParser.KeyProcessor global = new TestKeyProcessor("k");
+        LinearFileParser.KeyProcessor local = new TestKeyProcessor("k");
+        LineClassifier<String> classifier = new LineClassifier<>("@@", "@", "@");
+        classifier.addSection("s", "s");
+        classifier.addSection("t", "t");
+        classifier.addKeyProcessor(-1, new TestKeyProcessor("s"));
+        classifier.addKeyProcessor(-1, global);
+        classifier.addKeyProcessor(0, local);
+        LineClassifier.Match<String> match = new LineClassifier.Match<>();
+
+        assertEquals(classifier.classify("@@s", 0, match), LineClassifier.COMMENT);
+        assertEquals(classifier.classify("@s", 0, match), LineClassifier.SECTION);
+        assertEquals(match.section, "s");
+        assertEquals(classifier.classify("@s x", 0, match), LineClassifier.KEY);
+        assertEquals(classifier.classify("@k x", 0, match), LineClassifier.KEY);
+        assertSame(match.processor, local);
+        assertEquals(match.keyEnd, 2);
+        assertEquals(classifier.classify("@k x", 1, match), LineClassifier.KEY);
+        assertSame(match.processor, global);
+        assertEquals(classifier.classify("@u", 0, match), LineClassifier.UNKNOWN_KEY);
+        assertEquals(classifier.classify("k", 0, match), LineClassifier.OTHER);
+
+        classifier = new LineClassifier<>("#", "$", "@");
+        classifier.addSection("s", "s");
+        assertEquals(classifier.classify("$s", 0, match), LineClassifier.SECTION);
+        assertEquals(classifier.classify("$u", 0, match), LineClassifier.UNKNOWN_SECTION);
+    }
+
+    /**
+     * Asserts that {@link LinearFileParser#_parseParallel(List, ForkJoinPool)}
+     * processes the same lines as a sequential parse and reports the same
+     * statistics to a listener shared by all blocks.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testParallel() throws ParseException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add(i % 50 == 0 ? (i % 100 == 0 ? "@second" : "@first") : i % 7 == 0 ? "# comment" : "@print " + i);
+        }
+        TestParser4 expected = new TestParser4();
+        ParseStatistics expectedStatistics = new ParseStatistics();
+        expected.setParseListener(expectedStatistics);
+        expected._parse(lines);
+        TestParser4 parser = new TestParser4(true);
+        ParseStatistics statistics = new ParseStatistics();
+        parser.setParseListener(statistics);
+        parser._parseParallel(lines, new ForkJoinPool(4));
+
+        List<String> expectedLog = new ArrayList<>(expected.getLog());
+        List<String> log = new ArrayList<>(parser.getLog());
+        Collections.sort(expectedLog);
+        Collections.sort(log);
+        assertEquals(log, expectedLog);
+        assertEquals(statistics.getParses(), 1);
+        assertEquals(statistics.getKeys().get("print").getCount(), expectedStatistics.getKeys().get("print").getCount());
+        for (String section : Arrays.asList("first", "second")) {
+            assertEquals(statistics.getSections().get(section).getEntered(), expectedStatistics.getSections().get(section).getEntered());
+            assertEquals(statistics.getSections().get(section).getLines(), expectedStatistics.getSections().get(section).getLines());
+        }
+    }
+
+    /**
+     * Asserts that {@link LinearFileParser#_parseParallel(List, ForkJoinPool)}
+     * reports a one-shot key repeated in another block and errors in blocks
+     * processed on the pool as a sequential parse does.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testParallelErrors() throws ParseException {
+        List<String> lines = Arrays.asList("@second", "@once a", "@first", "@print b", "@second", "@print c", "@once d", "@first", "@unknown");
+        for (boolean parallel : new boolean[]{false, true}) {
+            TestParser4 parser = new TestParser4(true);
+            try {
+                parse(parser, lines, parallel);
+                fail("repeated one-shot key not reported");
+            } catch (RepeatedKeyException ex) {
+                assertEquals(ex.getLine(), 7);
+            }
+
+            parser.setMaxErrors(10);
+            parse(parser, lines, parallel);
+            List<ParseException> errors = parser.getErrorReport().getErrors();
+            assertEquals(errors.size(), 2);
+            assertTrue(errors.get(0) instanceof RepeatedKeyException);
+            assertEquals(errors.get(0).getLine(), 7);
+            assertTrue(errors.get(1) instanceof UnknownKeyException);
+            assertEquals(errors.get(1).getLine(), 9);
+        }
+    }
+
+    private static void parse(LinearFileParser parser, List<String> lines, boolean parallel) throws ParseException {
+        if (parallel) {
+            parser._parseParallel(lines, new ForkJoinPool(4));
+        } else {
+            parser._parse(lines);
+        }
+    }
+
+    /**
+     * Asserts that {@link LinearFileParser#_parseIncremental(List, LinearFileParser.Outline, List)}
+     * processes again only the blocks affected by an edit inside a block, an
+     * added section line and a removed section line, with the same result and
+     * outline as a full parse.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testIncremental() throws ParseException {
+        List<String> lines = Arrays.asList("@print a", "@second", "@print b", "@print c", "@first", "@print d");
+        assertIncremental(lines, Arrays.asList("@print a", "@second", "@print b", "@print x", "@first", "@print d"),
+                new LinearFileParser.LineChange(3, 1, 1), Arrays.asList("second 2 4"), 3, 7);
+        assertIncremental(lines, Arrays.asList("@print a", "@second", "@print b", "@first", "@print c", "@first", "@print d"),
+                new LinearFileParser.LineChange(3, 0, 1), Arrays.asList("second 2 4"), 3, 9);
+        assertIncremental(lines, Arrays.asList("@print a", "@second", "@print b", "@print c", "@print d"),
+                new LinearFileParser.LineChange(4, 1, 0), Arrays.asList("second 2 4", "first 5 6"), 3, 8);
+    }
+
+    /**
+     * Parse {@code lines}, then {@code changed} incrementally and compare with
+     * a full parse of {@code changed}.
+     *
+     * @param discarded the blocks expected to be discarded, as "&lt;section&gt;
+     * &lt;start line&gt; &lt;end line&gt;"
+     * @param from index of the first entry of the full parse's log belonging
+     * to the blocks processed again
+     * @param to index after the last entry of the full parse's log belonging
+     * to the blocks processed again
+     */
+    private static void assertIncremental(List<String> lines, List<String> changed, LinearFileParser.LineChange change, List<String> discarded, int from, int to) throws ParseException {
+        final List<String> discardedBlocks = new ArrayList<>();
+        TestParser4 parser = new TestParser4(true) {
+            @Override
+            protected void discardBlock(String sectionID, int startLine, int endLine) {
+                discardedBlocks.add(sectionID + " " + startLine + " " + endLine);
+            }
+        };
+        LinearFileParser.Outline outline = parser._parseIncremental(lines, null, null);
+        int logSize = parser.getLog().size();
+        outline = parser._parseIncremental(changed, outline, Arrays.asList(change));
+        TestParser4 full = new TestParser4(true);
+        LinearFileParser.Outline fullOutline = full._parseIncremental(changed, null, null);
+
+        assertEquals(discardedBlocks, discarded);
+        assertEquals(parser.getLog().subList(logSize, parser.getLog().size()), full.getLog().subList(from, to));
+        assertEquals(outline.getLineCount(), changed.size());
+        assertEquals(outline.getBlockCount(), fullOutline.getBlockCount());
+        for (int i = 0; i < outline.getBlockCount(); i++) {
+            assertEquals(outline.getSectionID(i), fullOutline.getSectionID(i));
+            assertEquals(outline.getStartLine(i), fullOutline.getStartLine(i));
+            assertEquals(outline.getEndLine(i), fullOutline.getEndLine(i));
+        }
+    }
+
+    /**
+     * Asserts that {@link ParseCache} restores the result of an unchanged
+     * file, parses a file again whose content changed (even with the same size
+     * and modification time) or whose entry cannot be read and deletes the
+     * least recently used entries when exceeding the maximum size.
+     *
+     * @throws IOException
+     * @throws ParseException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testParseCache() throws IOException, ParseException, InterruptedException {
+        Path directory = Files.createTempDirectory("linearfileparser");
+        try {
+            assertParseCache(directory);
+        } finally {
+            delete(directory.toFile());
+        }
+    }
+
+    private static void assertParseCache(Path directory) throws IOException, ParseException, InterruptedException {
+        Path file1 = Files.write(directory.resolve("file1"), "@print a".getBytes(StandardCharsets.UTF_8));
+        Path file2 = Files.write(directory.resolve("file2"), "@print b".getBytes(StandardCharsets.UTF_8));
+        Path file3 = Files.write(directory.resolve("file3"), "@print c".getBytes(StandardCharsets.UTF_8));
+        TestFileParser parser = new TestFileParser();
+        ParseCache<List<String>> cache = new ParseCache<>(directory.resolve("cache"), Long.MAX_VALUE, "1", new LogSerializer());
+
+        List<String> result = cache.get(file1, parser);
+        assertEquals(cache.get(file1, parser), result);
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+        assertEquals(parser.parses, 1);
+
+        FileTime modified = Files.getLastModifiedTime(file1);
+        Files.write(file1, "@print x".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file1, modified);
+        assertEquals(cache.get(file1, parser), Arrays.asList("first 0 enter", "first 1 print x", "first 1 leave"));
+        assertEquals(cache.getMisses(), 2);
+
+        ParseCache<List<String>> failing = new ParseCache<>(directory.resolve("cache"), Long.MAX_VALUE, "1", new LogSerializer() {
+            @Override
+            public List<String> read(DataInputStream in) throws IOException {
+                throw new IllegalStateException();
+            }
+        });
+        failing.get(file1, parser);
+        assertEquals(failing.getMisses(), 1);
+        assertEquals(parser.parses, 3);
+
+        try {
+            new ParseCache<>(directory.resolve("cache"), -1, "1", new LogSerializer());
+            fail("negative maximum size accepted");
+        } catch (IllegalArgumentException ex) {
+        }
+
+        long entrySize = Files.size(directory.resolve("cache").toFile().listFiles()[0].toPath());
+        cache = new ParseCache<>(directory.resolve("lru"), 2 * entrySize, "1", new LogSerializer());
+        cache.get(file1, parser);
+        Thread.sleep(20);
+        cache.get(file2, parser);
+        Thread.sleep(20);
+        cache.get(file1, parser); // file1 is now used more recently than file2
+        Thread.sleep(20);
+        cache.get(file3, parser);
+        assertEquals(directory.resolve("lru").toFile().listFiles().length, 2);
+        cache.get(file1, parser);
+        cache.get(file3, parser);
+        assertEquals(cache.getHits(), 3);
+        cache.get(file2, parser);
+        assertEquals(cache.getMisses(), 4);
+    }
+
+    /**
+     * Asserts that {@link LinearFileParser#_parseSection(File, LineIndex, String, int)}
+     * and {@link LinearFileParser#_parseKey(File, LineIndex, String, int)}
+     * process the indexed lines as a full parse does and that an index is
+     * detected to be stale after the file changed.
+     *
+     * @throws IOException
+     * @throws ParseException
+     */
+    @Test
+    public void testLineIndex() throws IOException, ParseException {
+        Path directory = Files.createTempDirectory("linearfileparser");
+        try {
+            File file = Files.write(directory.resolve("file"), "@print a\n@second\n@print b\n@once c\n@first\n@print d\n@second\n@print e\n".getBytes(StandardCharsets.UTF_8)).toFile();
+            TestParser4 full = new TestParser4();
+            full._parse(file);
+            TestParser4 parser = new TestParser4();
+            LineIndex index = parser._index(file, StandardCharsets.UTF_8, directory.resolve("index"));
+            assertTrue(index.isValidFor(file.toPath()));
+            assertEquals(index.getSectionCount("second"), 2);
+            assertEquals(index.getKeyCount("print"), 4);
+            assertEquals(index.getSectionLine("second", 1), 6);
+            assertEquals(index.getKeyLine("once", 0), 3);
+
+            index = LineIndex.open(directory.resolve("index"));
+            parser._parseSection(file, index, "second", 1);
+            assertEquals(parser.getLog(), full.getLog().subList(10, 13));
+            parser = new TestParser4();
+            parser._parseKey(file, index, "once", 0);
+            assertEquals(parser.getLog(), full.getLog().subList(5, 6));
+
+            Files.write(file.toPath(), "@print a\n".getBytes(StandardCharsets.UTF_8));
+            assertFalse(index.isValidFor(file.toPath()));
+            try {
+                parser._parseSection(file, index, "second", 1);
+                fail("stale index not detected");
+            } catch (IllegalArgumentException ex) {
+            }
+        } finally {
+            delete(directory.toFile());
+        }
+    }
+
+    /**
+     * Asserts that with {@link LinearFileParser#setWantedSections(String...)}
+     * only the wanted sections of a memory-mapped file are processed, as in a
+     * full parse, while the lines of other sections (including unknown keys)
+     * are skipped.
+     *
+     * @throws IOException
+     * @throws ParseException
+     */
+    @Test
+    public void testWantedSections() throws IOException, ParseException {
+        String content = "@print a line longer than eight bytes\r\n@unknown\r@second\n@print \u00e4\u20ac\r\n@once b\r@first\n@unknown key in a skipped section\n@second\r\n@print c";
+        File file = createFile(content);
+        TestParser4 full = new TestParser4();
+        full.setMaxErrors(10);
+        full._parse(Arrays.asList(content.split("\r\n|\r|\n")));
+        List<String> expected = new ArrayList<>();
+        for (String entry : full.getLog()) {
+            if (entry.startsWith("second ")) {
+                expected.add(entry);
+            }
+        }
+        assertEquals(full.getErrorReport().size(), 2);
+
+        TestParser4 parser = new TestParser4();
+        parser.setWantedSections("second");
+        parser._parseMapped(file);
+        assertEquals(parser.getLog(), expected);
+    }
+
+    /**
+     * Asserts that {@link LinearFileParser#_parsePipelined(Reader, int, int, PipelineStatistics)}
+     * processes the same lines as parsing the list of lines and that a read
+     * error and an unchecked exception of the reader thread are thrown by the
+     * parse.
+     *
+     * @throws IOException
+     * @throws ParseException
+     */
+    @Test
+    public void testPipelined() throws IOException, ParseException {
+        List<String> lines = Arrays.asList("@print a", "# comment", "@second", "@once b", "", "@print c", "@first", "@print d");
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        TestParser4 expected = new TestParser4();
+        expected._parse(lines);
+        TestParser4 parser = new TestParser4();
+        PipelineStatistics statistics = new PipelineStatistics();
+        parser._parsePipelined(new StringReader(text.toString()), 3, 1, statistics);
+        assertEquals(parser.getLog(), expected.getLog());
+        assertEquals(statistics.getLines(), lines.size());
+        assertEquals(statistics.getBatches(), 3);
+
+        final String failingText = "@print a\n@print b\n";
+        Reader failing = new Reader() {
+
+            private int position;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                if (position == failingText.length()) {
+                    throw new IOException("read failed");
+                }
+                buffer[offset] = failingText.charAt(position++);
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        parser = new TestParser4();
+        try {
+            parser._parsePipelined(failing, 1, 1, null);
+            fail("read failure not reported");
+        } catch (IOException ex) {
+            assertEquals(ex.getMessage(), "read failed");
+        }
+        assertEquals(parser.getLog(), Arrays.asList("first 0 enter", "first 1 print a", "first 2 print b"));
+
+        Reader unchecked = new Reader() {
+
+            private int position;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (position == failingText.length()) {
+                    throw new UncheckedIOException(new IOException("read failed"));
+                }
+                buffer[offset] = failingText.charAt(position++);
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        parser = new TestParser4();
+        try {
+            parser._parsePipelined(unchecked, 1, 1, null);
+            fail("unchecked read failure not reported");
+        } catch (IOException ex) {
+            assertTrue(ex.getCause() instanceof UncheckedIOException);
+        }
+        assertEquals(parser.getLog(), Arrays.asList("first 0 enter", "first 1 print a", "first 2 print b"));
+    }
+
+    /**
+     * Asserts that {@link LinearFileParser#_parse(InputStream)} decodes UTF-8
+     * with and without non-ASCII characters, decompresses gzip-compressed
+     * input and rejects Zstandard-compressed input.
+     *
+     * @throws IOException
+     * @throws ParseException
+     */
+    @Test
+    public void testInputStream() throws IOException, ParseException {
+        List<String> lines = Arrays.asList("@print a", "@print \u00e4\u20ac", "@second", "@once b");
+        byte[] content = "@print a\r\n@print \u00e4\u20ac\n@second\r@once b".getBytes(StandardCharsets.UTF_8);
+        TestParser4 expected = new TestParser4();
+        expected._parse(lines);
+
+        TestParser4 parser = new TestParser4();
+        parser._parse(new ByteArrayInputStream(content));
+        assertEquals(parser.getLog(), expected.getLog());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(content);
+        }
+        parser = new TestParser4();
+        parser._parse(new ByteArrayInputStream(compressed.toByteArray()));
+        assertEquals(parser.getLog(), expected.getLog());
+
+        parser = new TestParser4();
+        parser._parse(new ByteArrayInputStream(new byte[]{'#'}));
+        try {
+            parser._parse(new ByteArrayInputStream(new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd, 0}));
+            fail("Zstandard-compressed input accepted");
+        } catch (IOException ex) {
+        }
+    }
+
+    /**
+     * Asserts that {@link BlockKeyProcessor} receives the lines up to the
+     * boundary of each {@link BlockKeyProcessor.Terminator} and that a missing
+     * end marker is reported.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testBlocks() throws ParseException {
+        List<String> lines = Arrays.asList("@nextKey x", "one", "# comment", "two", "@print a", "@blankLine", "b", "", "@print b", "@endMarker",
+                "e", "@print not processed", "@end", "@indentation", "  i", "\ti", "@print c", "@second", "@nextKey", "z", "@first", "@indentation");
+        TestParser4 parser = createBlockParser();
+        parser._parse(lines);
+        assertEquals(parser.getLog(), Arrays.asList("first 0 enter",
+                "first 4 nextKey x 2 [one, # comment, two]",
+                "first 5 print a",
+                "first 8 blankLine null 7 [b]",
+                "first 9 print b",
+                "first 13 endMarker null 11 [e, @print not processed]",
+                "first 16 indentation null 15 [  i, \ti]",
+                "first 17 print c",
+                "first 18 leave",
+                "second 18 enter",
+                "second 20 nextKey null 20 [z]",
+                "second 21 leave",
+                "first 21 enter",
+                "first 22 indentation null 23 []",
+                "first 22 leave"));
+
+        try {
+            createBlockParser()._parse(Arrays.asList("@print a", "@endMarker", "e", "@second"));
+            fail("unterminated block not reported");
+        } catch (UnterminatedBlockException ex) {
+            assertEquals(ex.getLine(), 2);
+            assertEquals(ex.getEndMarker(), "@end");
+        }
+    }
+
+    /**
+     * Create a {@link TestParser4} with additional block processors for every
+     * {@link BlockKeyProcessor.Terminator}, recording the argument, the first
+     * line and the lines of the block.
+     */
+    private static TestParser4 createBlockParser() {
+        TestParser4 parser = new TestParser4();
+        parser.addKeyProcessor(new TestBlockProcessor(parser, "nextKey", BlockKeyProcessor.Terminator.NEXT_KEY));
+        parser.addKeyProcessor(new TestBlockProcessor(parser, "blankLine", BlockKeyProcessor.Terminator.BLANK_LINE));
+        parser.addKeyProcessor(new TestBlockProcessor(parser, "indentation", BlockKeyProcessor.Terminator.INDENTATION));
+        parser.addKeyProcessor(new TestBlockProcessor(parser, "endMarker", "@end"));
+        return parser;
+    }
+
+    /**
+     * Asserts that {@link BatchKeyProcessor} receives the arguments in chunks
+     * which are passed on when full, before a line with another key, before a
+     * section change and at the end, but not before a comment.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testBatch() throws ParseException {
+        TestParser4 parser = new TestParser4();
+        parser.addKeyProcessor(new TestBatchProcessor(parser));
+        ParseStatistics statistics = new ParseStatistics();
+        parser.setParseListener(statistics);
+        parser._parse(Arrays.asList("@batch 1", "@batch 2", "@batch 3", "# comment", "@print a", "@batch 4", "@second", "@batch", "@batch 5"));
+        assertEquals(parser.getLog(), Arrays.asList("first 0 enter",
+                "first 2 batch [1, 2] [1, 2]",
+                "first 5 batch [3] [3]",
+                "first 5 print a",
+                "first 7 batch [4] [6]",
+                "first 7 leave",
+                "second 7 enter",
+                "second 9 batch [null, 5] [8, 9]",
+                "second 9 leave"));
+        assertEquals(statistics.getKeys().get("batch").getCount(), 4);
+    }
+
+    /**
+     * Asserts that when collecting errors, a line interrupting a chunk of a
+     * {@link BatchKeyProcessor} is processed even if the processor fails.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testBatchCollectErrors() throws ParseException {
+        TestParser4 parser = new TestParser4();
+        parser.addKeyProcessor(new TestBatchProcessor(parser));
+        parser.setMaxErrors(10);
+        parser._parse(Arrays.asList("@batch fail", "@second", "@batch fail", "@once a", "@print b", "@once c"));
+        assertEquals(parser.getLog(), Arrays.asList("first 0 enter",
+                "first 2 leave",
+                "second 2 enter",
+                "second 4 once a",
+                "second 5 print b",
+                "second 6 leave"));
+        List<ParseException> errors = parser.getErrorReport().getErrors();
+        assertEquals(errors.size(), 3);
+        assertEquals(errors.get(0).getLine(), 1);
+        assertEquals(errors.get(1).getLine(), 3);
+        assertTrue(errors.get(2) instanceof RepeatedKeyException);
+        assertEquals(((RepeatedKeyException) errors.get(2)).getFirstOccurrence(), 4);
+    }
+
+    /**
+     * Asserts that {@link LinearFileParser#_follow(Path, Charset, long)}
+     * processes appended lines once they are complete, reads a truncated file
+     * again from the beginning and a rotated file to its end before continuing
+     * with the new file, keeping the current section, until
+     * {@link LinearFileParser#stopFollowing()} is called.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testFollow() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("linearfileparser");
+        try {
+            final Path file = Files.write(directory.resolve("file"), "@print 1\n@second\n@print par".getBytes(StandardCharsets.UTF_8));
+            final TestParser4 parser = new TestParser4();
+            final List<Exception> exceptions = new ArrayList<>();
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        parser._follow(file, StandardCharsets.UTF_8, 10);
+                    } catch (IOException | ParseException ex) {
+                        exceptions.add(ex);
+                    }
+                }
+            };
+            thread.start();
+            awaitLog(parser, 4);
+            Files.write(file, "tial\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            awaitLog(parser, 5);
+            Files.write(file, "@print 2\n".getBytes(StandardCharsets.UTF_8));
+            awaitLog(parser, 6);
+            Files.write(file, "@print 3".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            Files.move(file, directory.resolve("file.1"));
+            Files.write(file, "@print 4\n".getBytes(StandardCharsets.UTF_8));
+            awaitLog(parser, 8);
+            parser.stopFollowing();
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+            assertTrue(exceptions.isEmpty());
+            assertEquals(parser.getLog(), Arrays.asList("first 0 enter",
+                    "first 1 print 1",
+                    "first 2 leave",
+                    "second 2 enter",
+                    "second 3 print partial",
+                    "second 4 print 2",
+                    "second 5 print 3",
+                    "second 6 print 4",
+                    "second 6 leave"));
+        } finally {
+            delete(directory.toFile());
+        }
+    }
+
+    /**
+     * Wait until the log of the parser has at least the given size.
+     */
+    private static void awaitLog(TestParser4 parser, int size) throws InterruptedException {
+        for (int i = 0; parser.getLog().size() < size; i++) {
+            if (i == 1000) {
+                fail("lines not processed: " + parser.getLog());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Asserts that a {@link Checkpoint} is written and read unchanged, that
+     * resuming an interrupted parse from a checkpoint gives the same result
+     * as the uninterrupted parse, including the one-shot keys used before the
+     * checkpoint, and that a checkpoint not matching the parser and data
+     * with the magic number of a {@link ParseCache} entry are rejected.
+     *
+     * @throws IOException
+     * @throws ParseException
+     */
+    @Test
+    public void testCheckpoints() throws IOException, ParseException {
+        File file = createFile("@print a\n@second\n@once a\n# comment\r\n@print \u00e4\n@once b\n");
+        final List<Checkpoint> checkpoints = new ArrayList<>();
+        CheckpointParser parser = new CheckpointParser();
+        parser.setCheckpoints(new Checkpoint.Handler() {
+            @Override
+            public void checkpoint(Checkpoint checkpoint) {
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    checkpoint.write(new DataOutputStream(out));
+                    Checkpoint read = Checkpoint.read(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+                    assertEquals(read.getOffset(), checkpoint.getOffset());
+                    assertEquals(read.getLine(), checkpoint.getLine());
+                    assertEquals(read.getSectionID(), checkpoint.getSectionID());
+                    assertTrue(Arrays.equals(read.getOneShotLines(), checkpoint.getOneShotLines()));
+                    assertTrue(Arrays.equals(read.getState(), checkpoint.getState()));
+                    checkpoints.add(read);
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }, 2, 0);
+        try {
+            parser._parseMapped(file);
+            fail("repeated one-shot key not reported");
+        } catch (RepeatedKeyException ex) {
+            assertEquals(ex.getLine(), 6);
+        }
+        assertEquals(checkpoints.size(), 2);
+        Checkpoint checkpoint = checkpoints.get(1);
+        assertEquals(checkpoint.getLine(), 4);
+        assertEquals(checkpoint.getSectionID(), "second");
+
+        CheckpointParser resumed = new CheckpointParser();
+        try {
+            resumed._resume(file, StandardCharsets.UTF_8, checkpoint);
+            fail("repeated one-shot key not reported");
+        } catch (RepeatedKeyException ex) {
+            assertEquals(ex.getLine(), 6);
+            assertEquals(ex.getFirstOccurrence(), 3);
+        }
+        assertEquals(resumed.getLog(), parser.getLog());
+
+        for (Checkpoint mismatched : Arrays.asList(new Checkpoint(0, 0, "third", new int[]{-1}, null), new Checkpoint(0, 0, "first", new int[0], null))) {
+            try {
+                new CheckpointParser()._resume(file, StandardCharsets.UTF_8, mismatched);
+                fail("mismatched checkpoint accepted");
+            } catch (IllegalArgumentException ex) {
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        checkpoint.write(new DataOutputStream(out));
+        byte[] bytes = out.toByteArray();
+        System.arraycopy("LFPC".getBytes(StandardCharsets.US_ASCII), 0, bytes, 0, 4); // the magic number of ParseCache entries
+        try {
+            Checkpoint.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+            fail("parse cache entry read as checkpoint");
+        } catch (IOException ex) {
+        }
+    }
+
+    /**
+     * Asserts that {@link SymbolTable} counts hits, misses and skipped
+     * strings and keeps frequent strings while many other strings are looked
+     * up.
+     */
+    @Test
+    public void testSymbolTable() {
+        SymbolTable symbols = new SymbolTable(16, 5);
+        String a = symbols.intern("@key a", 5, 6);
+        assertEquals(a, "a");
+        assertSame(symbols.intern("a"), a);
+        symbols.intern("too long");
+        assertEquals(symbols.getHits(), 1);
+        assertEquals(symbols.getMisses(), 1);
+        assertEquals(symbols.getSkipped(), 1);
+        symbols.clear();
+        assertEquals(symbols.getHits() + symbols.getMisses() + symbols.getSkipped(), 0);
+        assertNotSame(symbols.intern("a"), a);
+
+        symbols.clear();
+        List<String> frequent = Arrays.asList("alpha", "beta", "gamma");
+        for (int i = 0; i < 10000; i++) {
+            symbols.intern("v" + i);
+            for (String s : frequent) {
+                symbols.intern(s);
+            }
+        }
+        long frequentMisses = symbols.getMisses() - 10000; // every other string is new
+        assertTrue(frequentMisses < 3 * 10000 / 5);
+    }
+
+    /**
+     * Asserts that arguments are taken from the symbol table of the parser
+     * and of a parser sharing its definition.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testInternArguments() throws ParseException {
+        final List<String> args = new ArrayList<>();
+        TestParser4 parser = new TestParser4();
+        parser.addKeyProcessor(new LinearFileParser.KeyProcessor("arg") {
+            @Override
+            public void process(String arg, ListIterator<String> it) throws ParseException {
+                args.add(arg);
+            }
+        });
+        SymbolTable symbols = new SymbolTable(16, 5);
+        parser.setSymbolTable(symbols);
+        assertSame(parser.getSymbolTable(), symbols);
+        parser._parse(Arrays.asList("@arg a", "@arg a", "@arg", "@arg too long"));
+        new TestParser4(parser)._parse(Arrays.asList("@arg a"));
+        assertEquals(args, Arrays.asList("a", "a", null, "too long", "a"));
+        assertSame(args.get(1), args.get(0));
+        assertSame(args.get(4), args.get(0));
+        assertSame(parser.intern("@arg a", 5, 6), args.get(0));
+        assertEquals(symbols.getHits(), 3);
+        assertEquals(symbols.getMisses(), 1);
+        assertEquals(symbols.getSkipped(), 1);
+    }
+
+    /**
+     * Asserts that a {@link LineKeyProcessor} receives the current line and
+     * the range of its argument when parsing a list of lines, a stream and a
+     * mapped file, also for lines ending right after the key.
+     *
+     * @throws IOException
+     * @throws ParseException
+     */
+    @Test
+    public void testLineKeyProcessor() throws IOException, ParseException {
+        List<String> lines = Arrays.asList("@line abc", "@line", "@line ", "@print a", "@line  x\ty ", "@line \u00e4\u20ac");
+        List<String> expected = Arrays.asList("[@line abc] 6 9 abc true", "[@line] 5 5  false", "[@line ] 6 6  false",
+                "[@line  x\ty ] 6 11  x\ty  false", "[@line \u00e4\u20ac] 6 8 \u00e4\u20ac false");
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        File file = createFile(text.toString());
+        for (int input = 0; input < 3; input++) {
+            final List<String> ranges = new ArrayList<>();
+            TestParser4 parser = new TestParser4();
+            parser.addKeyProcessor(new LineKeyProcessor("line") {
+                @Override
+                public void process(CharSequence line, int argStart, int argEnd, ListIterator<String> it) throws ParseException {
+                    ranges.add("[" + line + "] " + argStart + " " + argEnd + " " + line.subSequence(argStart, argEnd) + " " + regionEquals(line, argStart, argEnd, "abc"));
+                }
+            });
+            if (input == 0) {
+                parser._parse(lines);
+            } else if (input == 1) {
+                parser._parseStream(new StringReader(text.toString()));
+            } else {
+                parser._parseMapped(file);
+            }
+            assertEquals(ranges, expected);
+            assertEquals(parser.getLog(), Arrays.asList("first 0 enter", "first 4 print a", "first 6 leave"));
+        }
+    }
+
+    /**
+     * Asserts that {@link LineKeyProcessor#regionEquals(CharSequence, int, int, String)}
+     * and
+     * {@link LineKeyProcessor#regionEqualsIgnoreCase(CharSequence, int, int, String)}
+     * compare exactly the given range.
+     */
+    @Test
+    public void testRegionEquals() {
+        String line = "@key Value x";
+        assertTrue(LineKeyProcessor.regionEquals(line, 5, 10, "Value"));
+        assertFalse(LineKeyProcessor.regionEquals(line, 5, 10, "value"));
+        assertFalse(LineKeyProcessor.regionEquals(line, 5, 11, "Value"));
+        assertFalse(LineKeyProcessor.regionEquals(line, 5, 9, "Value"));
+        assertTrue(LineKeyProcessor.regionEquals(line, 12, 12, ""));
+        assertFalse(LineKeyProcessor.regionEquals(line, 4, 9, "Value"));
+        assertTrue(LineKeyProcessor.regionEqualsIgnoreCase(line, 5, 10, "vALUE"));
+        assertTrue(LineKeyProcessor.regionEqualsIgnoreCase(line, 5, 10, "Value"));
+        assertFalse(LineKeyProcessor.regionEqualsIgnoreCase(line, 5, 10, "Valu"));
+        assertFalse(LineKeyProcessor.regionEqualsIgnoreCase(line, 5, 11, "value"));
+        assertFalse(LineKeyProcessor.regionEqualsIgnoreCase(line, 6, 11, "value"));
+        assertTrue(LineKeyProcessor.regionEqualsIgnoreCase("@key \u00c4\u00df", 5, 7, "\u00e4\u00df"));
+        assertTrue(LineKeyProcessor.regionEqualsIgnoreCase(line, 0, 0, ""));
+    }
+
+    /**
+     * Asserts that {@link BatchParser} reports the result of every file, that
+     * a failing file does not abort the batch, that only the regular files
+     * matching the pattern of a directory are parsed and that an
+     * {@link Error} of a file parser is rethrown.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testBatchParser() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("linearfileparser");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertBatchParser(directory, executor);
+        } finally {
+            executor.shutdown();
+            delete(directory.toFile());
+        }
+    }
+
+    private static void assertBatchParser(Path directory, ExecutorService executor) throws IOException, InterruptedException {
+        Path a = Files.write(directory.resolve("a.txt"), "@print a".getBytes(StandardCharsets.UTF_8));
+        Path b = Files.write(directory.resolve("b.txt"), "@print b\n@unknown".getBytes(StandardCharsets.UTF_8));
+        Path c = Files.write(directory.resolve("c.txt"), "@print c".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("d.log"), "@print d".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectory(directory.resolve("e.txt"));
+        BatchParser<List<String>> batchParser = new BatchParser<>(new TestFileParser(), executor);
+
+        List<BatchParser.Result<List<String>>> results = batchParser.parse(Arrays.asList(a, b, c, directory.resolve("missing.txt")));
+        assertEquals(results.size(), 4);
+        assertEquals(results.get(0).getFile(), a);
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(results.get(0).getValue(), Arrays.asList("first 0 enter", "first 1 print a", "first 1 leave"));
+        assertEquals(results.get(1).getFile(), b);
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(results.get(1).getValue(), null);
+        assertTrue(results.get(1).getParseException() instanceof UnknownKeyException);
+        assertEquals(results.get(1).getParseException().getLine(), 2);
+        assertEquals(results.get(2).getValue(), Arrays.asList("first 0 enter", "first 1 print c", "first 1 leave"));
+        assertTrue(results.get(3).getException() instanceof IOException);
+        assertEquals(results.get(3).getParseException(), null);
+
+        results = batchParser.parse(directory, "*.txt");
+        List<Path> files = new ArrayList<>();
+        for (BatchParser.Result<List<String>> result : results) {
+            files.add(result.getFile());
+            assertEquals(result.isSuccess(), !result.getFile().equals(b));
+        }
+        Collections.sort(files);
+        assertEquals(files, Arrays.asList(a, b, c));
+
+        BatchParser<List<String>> failing = new BatchParser<>(new BatchParser.FileParser<List<String>>() {
+            @Override
+            public List<String> parse(Path file) {
+                throw new AssertionError("parser failed");
+            }
+        }, executor);
+        try {
+            failing.parse(Arrays.asList(a));
+            fail("error of file parser not rethrown");
+        } catch (AssertionError ex) {
+            assertEquals(ex.getMessage(), "parser failed");
+        }
+    }
+
+    /**
+     * Asserts that {@link MessageTemplate#format(Object...)} gives the same
+     * result as {@link String#format(Locale, String, Object...)} for the
+     * resources of both shipped locales and for patterns which have to be
+     * passed to the formatter.
+     */
+    @Test
+    public void testMessageTemplate() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            for (Locale locale : Arrays.asList(Locale.US, Locale.GERMANY)) {
+                Locale.setDefault(locale);
+                CachingResourceProvider rp = new CachingResourceProvider();
+                assertEquals(rp.getString(R.ERROR_AT_LINE).startsWith("Fehler"), locale == Locale.GERMANY);
+                for (R key : R.values()) {
+                    assertEquals(rp.getTemplate(key).getPattern(), rp.getString(key));
+                    assertFormat(locale, rp.getString(key));
+                }
+            }
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+        for (String pattern : Arrays.asList("%s and %d", "%2$s before %1$s %%", "%1$d %s %s", "%5s", "%S", "%n", "%", "%-s", "%0$s", "100%")) {
+            assertFormat(Locale.US, pattern);
+        }
+        assertFormat(Locale.forLanguageTag("ar-EG"), "%s: %d");
+        assertEquals(MessageTemplate.compile(Locale.US, "%s %d").format("a", null), "a null");
+    }
+
+    private static void assertFormat(Locale locale, String pattern) {
+        Formattable formattable = new Formattable() {
+            @Override
+            public void formatTo(Formatter formatter, int flags, int width, int precision) {
+                formatter.format("formatted");
+            }
+
+            @Override
+            public String toString() {
+                return "plain";
+            }
+        };
+        MessageTemplate template = MessageTemplate.compile(locale, pattern);
+        for (Object[] args : Arrays.asList(new Object[]{}, new Object[]{"a"}, new Object[]{"a", "b"}, new Object[]{"a", 7}, new Object[]{7, -8L},
+                new Object[]{(short) 1, (byte) 2}, new Object[]{null, null}, new Object[]{"a", "b", "c"}, new Object[]{formattable, 3}, new Object[]{"a", 2.5})) {
+            String expected;
+            try {
+                expected = String.format(locale, pattern, args);
+            } catch (IllegalFormatException ex) {
+                expected = ex.getClass().getName();
+            }
+            String actual;
+            try {
+                actual = template.format(args);
+            } catch (IllegalFormatException ex) {
+                actual = ex.getClass().getName();
+            }
+            assertEquals(actual, expected, pattern + " " + Arrays.toString(args));
+        }
+    }
+
+    /**
+     * Asserts that {@link CachingResourceProvider} obtains every string once
+     * per default locale until it is cleared, that a missing string is not
+     * cached and that the message of a {@link ParseException} is memoized
+     * until another resource provider is set.
+     */
+    @Test
+    public void testCachingResourceProvider() {
+        final int[] calls = new int[1];
+        CachingResourceProvider rp = new CachingResourceProvider(new ResourceProvider() {
+            @Override
+            public String getString(R key) {
+                calls[0]++;
+                if (key == R.UNTERMINATED_BLOCK) {
+                    throw new MissingResourceException("missing", R.class.getName(), key.name());
+                }
+                return key == R.ERROR_AT_LINE ? "line " : key.name() + " %s %s";
+            }
+        });
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.US);
+            assertEquals(rp.getString(R.UNKNOWN_KEY), "UNKNOWN_KEY %s %s");
+            assertEquals(calls[0], R.values().length);
+            MessageTemplate template = rp.getTemplate(R.UNKNOWN_KEY);
+            assertSame(rp.getTemplate(R.UNKNOWN_KEY), template);
+            assertEquals(rp.getString(R.UNKNOWN_KEY), "UNKNOWN_KEY %s %s");
+            assertEquals(calls[0], R.values().length);
+            try {
+                rp.getString(R.UNTERMINATED_BLOCK);
+                fail("missing string not reported");
+            } catch (MissingResourceException ex) {
+            }
+            assertEquals(calls[0], R.values().length + 1);
+
+            UnknownKeyException ex = new UnknownKeyException("s", 3, "k");
+            ex.setResourceProvider(rp);
+            String message = ex.getMessage();
+            assertEquals(message, "line 3: UNKNOWN_KEY k s");
+            assertSame(ex.getMessage(), message);
+            assertEquals(calls[0], R.values().length + 1);
+
+            Locale.setDefault(Locale.GERMANY);
+            rp.getString(R.UNKNOWN_KEY);
+            assertEquals(calls[0], 2 * R.values().length + 1);
+            assertNotSame(rp.getTemplate(R.UNKNOWN_KEY), template);
+            rp.clear();
+            rp.getString(R.UNKNOWN_KEY);
+            assertEquals(calls[0], 3 * R.values().length + 1);
+
+            Locale.setDefault(Locale.US);
+            ex.setResourceProvider(new CachingResourceProvider());
+            assertEquals(ex.getMessage(), "Error at line 3: \"k\" is not a known key for the current section \"s\".");
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    /**
+     * Asserts that the exceptions created by the parser and by the processors
+     * of this library have no stack trace if disabled, with unchanged
+     * messages, and that the setting of a parse is restored after a nested
+     * parse.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testExceptionStackTraces() throws ParseException {
+        List<String> lines = Arrays.asList("@arg", "@unknown", "no key", "@second", "@once a", "@once b", "@arg x", "@nested", "@unknownSection", "@print a");
+        List<String> messages = null;
+        assertTrue(LinearFileParser.KeyProcessor.recordStackTraces());
+        for (final boolean stackTraces : new boolean[]{true, false}) {
+            final TestParser4 parser = new TestParser4();
+            parser.addKeyProcessor(new ArgKeyProcessor("arg") {
+                @Override
+                public void _process(String arg, ListIterator<String> it) throws ParseException {
+                }
+            });
+            parser.addKeyProcessor(new LinearFileParser.KeyProcessor("nested") {
+                @Override
+                public void process(String arg, ListIterator<String> it) throws ParseException {
+                    TestParser4 nested = new TestParser4();
+                    nested.setExceptionStackTraces(!stackTraces);
+                    nested.setMaxErrors(1);
+                    nested._parse(Arrays.asList("@unknown"));
+                    assertEquals(nested.getErrorReport().getFirst().getStackTrace().length > 0, !stackTraces);
+                    parser.record("nested " + recordStackTraces());
+                }
+            });
+            parser.setExceptionStackTraces(stackTraces);
+            parser.setMaxErrors(10);
+            parser._parse(lines);
+            List<ParseException> errors = parser.getErrorReport().getErrors();
+            assertEquals(errors.size(), 5);
+            assertTrue(errors.get(0) instanceof MissingArgumentException);
+            assertTrue(errors.get(3) instanceof RepeatedKeyException);
+            List<String> m = new ArrayList<>();
+            for (ParseException ex : errors) {
+                assertEquals(ex.getStackTrace().length > 0, stackTraces);
+                m.add(ex.getClass().getSimpleName() + " " + ex.getMessage());
+            }
+            if (messages == null) {
+                messages = m;
+            } else {
+                assertEquals(m, messages);
+            }
+            assertTrue(parser.getLog().contains("second 8 nested " + stackTraces));
+        }
+        assertTrue(LinearFileParser.KeyProcessor.recordStackTraces());
+    }
+
+    /**
+     * Asserts that the typed key processors decode valid arguments, including
+     * the bounds of the value range, and report missing and illegal arguments
+     * at the correct lines without stack trace if disabled.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testTypedKeyProcessors() throws ParseException {
+        final TestParser4 parser = new TestParser4();
+        parser.addKeyProcessor(new IntKeyProcessor("int") {
+            @Override
+            public void process(int value, ListIterator<String> it) throws ParseException {
+                parser.record("int " + value);
+            }
+        });
+        parser.addKeyProcessor(new IntKeyProcessor("range", false, -5, 10) {
+            @Override
+            public void process(int value, ListIterator<String> it) throws ParseException {
+                parser.record("range " + value);
+            }
+        });
+        parser.addKeyProcessor(new LongKeyProcessor("long") {
+            @Override
+            public void process(long value, ListIterator<String> it) throws ParseException {
+                parser.record("long " + value);
+            }
+        });
+        parser.addKeyProcessor(new DoubleKeyProcessor("double") {
+            @Override
+            public void process(double value, ListIterator<String> it) throws ParseException {
+                parser.record("double " + value);
+            }
+        });
+        parser.addKeyProcessor(new BooleanKeyProcessor("bool") {
+            @Override
+            public void process(boolean value, ListIterator<String> it) throws ParseException {
+                parser.record("bool " + value);
+            }
+        });
+        parser.addKeyProcessor(new EnumKeyProcessor<RoundingMode>("enum", false, RoundingMode.class, true) {
+            @Override
+            public void process(RoundingMode value, ListIterator<String> it) throws ParseException {
+                parser.record("enum " + value);
+            }
+        });
+        parser.addKeyProcessor(new EnumKeyProcessor<RoundingMode>("enumExact", RoundingMode.class) {
+            @Override
+            public void process(RoundingMode value, ListIterator<String> it) throws ParseException {
+                parser.record("enumExact " + value);
+            }
+        });
+        parser.addKeyProcessor(new DelimitedKeyProcessor("list", ',') {
+            @Override
+            public void processElement(CharSequence line, int start, int end, int index, ListIterator<String> it) throws ParseException {
+                parser.record("list " + index + " " + line.subSequence(start, end));
+            }
+
+            @Override
+            public void processEnd(int count, ListIterator<String> it) throws ParseException {
+                parser.record("list end " + count);
+            }
+        });
+        parser.setMaxErrors(100);
+        parser.setExceptionStackTraces(false);
+        parser._parse(Arrays.asList("@int 42", "@int -2147483648", "@int 2147483648", "@range 10", "@range 11", "@range -6", "@range -5",
+                "@long -9223372036854775808", "@long 9223372036854775807", "@long 9223372036854775808", "@long -9223372036854775809",
+                "@long +", "@long -", "@long", "@long \t ", "@double 1.5e3", "@double 1e", "@double  -0.25 ", "@bool TRUE", "@bool no",
+                "@enum half_up", "@enum UP ", "@enum sideways", "@enumExact up", "@enumExact HALF_EVEN", "@list a, b ,c", "@list a,,b",
+                "@list a, ", "@list", "@list x"));
+        assertEquals(parser.getLog(), Arrays.asList("first 0 enter", "first 1 int 42", "first 2 int -2147483648", "first 4 range 10",
+                "first 7 range -5", "first 8 long -9223372036854775808", "first 9 long 9223372036854775807", "first 16 double 1500.0",
+                "first 18 double -0.25", "first 19 bool true", "first 21 enum HALF_UP", "first 22 enum UP", "first 25 enumExact HALF_EVEN",
+                "first 26 list 0 a", "first 26 list 1 b", "first 26 list 2 c", "first 26 list end 3", "first 27 list 0 a", "first 28 list 0 a",
+                "first 30 list 0 x", "first 30 list end 1", "first 30 leave"));
+        List<String> errors = new ArrayList<>();
+        for (ParseException ex : parser.getErrorReport().getErrors()) {
+            assertEquals(ex.getStackTrace().length, 0);
+            if (ex instanceof IllegalArgumentFormatException) {
+                errors.add(ex.getLine() + " illegal " + ((IllegalArgumentFormatException) ex).getKey() + " " + ((IllegalArgumentFormatException) ex).getArgument());
+            } else {
+                errors.add(ex.getLine() + " missing " + ((MissingArgumentException) ex).getKey());
+            }
+        }
+        assertEquals(errors, Arrays.asList("3 illegal int 2147483648", "5 illegal range 11", "6 illegal range -6",
+                "10 illegal long 9223372036854775808", "11 illegal long -9223372036854775809", "12 illegal long +", "13 illegal long -",
+                "14 missing long", "15 missing long", "17 illegal double 1e", "20 illegal bool no", "23 illegal enum sideways",
+                "24 illegal enumExact up", "27 illegal list a,,b", "28 illegal list a,", "29 missing list"));
+    }
+
+    /**
+     * Asserts that {@link LineKeyProcessor#decodeDouble(CharSequence, int, int, ListIterator)}
+     * gives the same result as {@link Double#parseDouble(String)}, also on both
+     * sides of the limits of the decoding without substring (15 significant
+     * digits and an exponent of at most 22), and that
+     * {@link LineKeyProcessor#decodeLong(CharSequence, int, int, long, long, ListIterator)}
+     * and
+     * {@link LineKeyProcessor#decodeBoolean(CharSequence, int, int, ListIterator)}
+     * accept exactly the valid arguments.
+     *
+     * @throws ParseException
+     */
+    @Test
+    public void testDecode() throws ParseException {
+        LineKeyProcessor processor = new LineKeyProcessor("k") {
+            @Override
+            public void process(CharSequence line, int argStart, int argEnd, ListIterator<String> it) throws ParseException {
+            }
+        };
+        ListIterator<String> it = Arrays.asList("a", "b", "c").listIterator(2);
+        List<String> numbers = new ArrayList<>(Arrays.asList("0", "-0", "+0.0", "1", "-1.5", ".5", "5.", "0.1", "00012.50", "1E5", "1e+5", "1e-5",
+                "123456789012345", "1234567890123456", "12345678901234567", "9007199254740993", "0.000123456789012345", "123456789012345000",
+                "1e22", "1e23", "1e-22", "1e-23", "123456789012345e22", "123456789012345e23", "123456789012345e-22", "123456789012345e-23",
+                "999999999999999e22", "9999999999999999e22", "1.7976931348623157e308", "1e309", "4.9e-324", "1e-400", "1e0001",
+                "Infinity", "-NaN", "0x1p3", "1d", "2.5f"));
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder sb = new StringBuilder();
+            if (random.nextBoolean()) {
+                sb.append(random.nextBoolean() ? '-' : '+');
+            }
+            int digits = 1 + random.nextInt(18);
+            int point = random.nextInt(digits + 1);
+            for (int d = 0; d < digits; d++) {
+                if (d == point) {
+                    sb.append('.');
+                }
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextBoolean()) {
+                sb.append('e').append(random.nextInt(61) - 30);
+            }
+            numbers.add(sb.toString());
+        }
+        for (String number : numbers) {
+            String line = "@k  " + number + " ";
+            assertEquals(Double.doubleToLongBits(processor.decodeDouble(line, 3, line.length(), it)), Double.doubleToLongBits(Double.parseDouble(number)), number);
+        }
+        for (String number : Arrays.asList("1e", "1e+", "e5", ".", "-", "+", "1.2.3", "1 2", "--1", "1e5x", "0x")) {
+            String line = "@k " + number;
+            try {
+                processor.decodeDouble(line, 3, line.length(), it);
+                fail(number + " accepted");
+            } catch (IllegalArgumentFormatException ex) {
+                assertEquals(ex.getArgument(), number);
+                assertEquals(ex.getLine(), 2);
+            }
+        }
+
+        assertEquals(processor.decodeLong("@k 9223372036854775807", 3, 22, Long.MIN_VALUE, Long.MAX_VALUE, it), Long.MAX_VALUE);
+        assertEquals(processor.decodeLong("@k -9223372036854775808", 3, 23, Long.MIN_VALUE, Long.MAX_VALUE, it), Long.MIN_VALUE);
+        assertEquals(processor.decodeLong("@k +007", 3, 7, 7, 7, it), 7);
+        for (String number : Arrays.asList("9223372036854775808", "-9223372036854775809", "99999999999999999999", "+", "-", "1-", "1.0", "0x1", "8", "-1")) {
+            try {
+                processor.decodeLong(number, 0, number.length(), 0, 7, it);
+                fail(number + " accepted");
+            } catch (IllegalArgumentFormatException ex) {
+                assertEquals(ex.getArgument(), number);
+            }
+        }
+        for (String blank : Arrays.asList("", " ", "\t ")) {
+            try {
+                processor.decodeLong(blank, 0, blank.length(), Long.MIN_VALUE, Long.MAX_VALUE, it);
+                fail("blank argument accepted");
+            } catch (MissingArgumentException ex) {
+                assertEquals(ex.getLine(), 2);
+            }
+            try {
+                processor.decodeDouble(blank, 0, blank.length(), it);
+                fail("blank argument accepted");
+            } catch (MissingArgumentException ex) {
+            }
+            try {
+                processor.decodeBoolean(blank, 0, blank.length(), it);
+                fail("blank argument accepted");
+            } catch (MissingArgumentException ex) {
+            }
+        }
+
+        assertTrue(processor.decodeBoolean("@k True", 3, 7, it));
+        assertFalse(processor.decodeBoolean("@k  fALSE\t", 3, 10, it));
+        for (String value : Arrays.asList("yes", "1", "truee", "fals")) {
+            try {
+                processor.decodeBoolean(value, 0, value.length(), it);
+                fail(value + " accepted");
+            } catch (IllegalArgumentFormatException ex) {
+                assertEquals(ex.getArgument(), value);
+            }
+        }
+    }
+
+    /**
+     * Asserts that {@link RecordChannel#emit(Object)} blocks while the channel
+     * is full, that a failure is thrown after the records emitted before, that
+     * a parser started with
+     * {@link RecordChannel#start(java.util.concurrent.Executor, RecordChannel.Producer)}
+     * passes all records to a slow consumer and that
+     * {@link RecordChannel#cancel()} aborts a running parse, which closes its
+     * input.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRecordChannel() throws Exception {
+        final RecordChannel<Integer> channel = new RecordChannel<>(2);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 5; i++) {
+                    channel.emit(i);
+                }
+                channel.complete();
+            }
+        });
+        producer.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(producer.getState(), Thread.State.WAITING);
+        assertEquals(channel.size(), 2);
+        for (int i = 0; i < 5; i++) {
+            assertEquals((int) channel.take(), i);
+        }
+        assertNull(channel.take());
+        producer.join();
+
+        RecordChannel<Integer> failing = new RecordChannel<>(4);
+        failing.emit(1);
+        failing.emit(2);
+        IOException failure = new IOException("read failed");
+        failing.fail(failure);
+        assertEquals((int) failing.take(), 1);
+        assertEquals((int) failing.take(), 2);
+        try {
+            failing.take();
+            fail("failure not thrown");
+        } catch (IOException ex) {
+            assertSame(ex, failure);
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertRecordChannelParse(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertRecordChannelParse(ExecutorService executor) throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("@emit ").append(i).append('\n');
+        }
+        text.append("@unknown\n");
+        RecordChannel<Integer> channel = new RecordChannel<>(4);
+        channel.start(executor, new RecordChannel.Producer<Integer>() {
+            @Override
+            public void produce(RecordChannel<Integer> channel) throws IOException, ParseException {
+                new EmittingParser(channel)._parseStream(new StringReader(text.toString()), 16);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 10000;
+        for (int i = 0; i < 200; i++) {
+            if (i % 20 == 0) { // let the parser fill the channel, which it must not exceed
+                while (channel.size() < 4 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+                Thread.sleep(1);
+                assertEquals(channel.size(), 4);
+            }
+            assertEquals((int) channel.take(), i);
+        }
+        try {
+            channel.take();
+            fail("parse failure not thrown");
+        } catch (UnknownKeyException ex) {
+            assertEquals(ex.getLine(), 201);
+        }
+
+        final boolean[] closed = new boolean[1];
+        final Reader endless = new Reader() {
+
+            private int n;
+            private String line = "";
+            private int position;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (position == line.length()) {
+                    line = "@emit " + n++ + "\n";
+                    position = 0;
+                }
+                buffer[offset] = line.charAt(position++);
+                return 1;
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        channel = new RecordChannel<>(4);
+        channel.start(executor, new RecordChannel.Producer<Integer>() {
+            @Override
+            public void produce(RecordChannel<Integer> channel) throws IOException, ParseException {
+                new EmittingParser(channel)._parseStream(endless, 16);
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            assertEquals((int) channel.take(), i);
+        }
+        channel.cancel();
+        try {
+            channel.take();
+            fail("cancelled parse not ended");
+        } catch (CancellationException ex) {
+        }
+        assertTrue(closed[0]);
+    }
+
+    /**
+     * Delete a file or a directory with all its content.
+     *
+     * @param file
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Create a temporary file with the given content in UTF-8, which is
+     * deleted on exit.
+     *
+     * @param content
+     * @return
+     * @throws IOException
+     */
+    private static File createFile(String content) throws IOException {
+        return createFile(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Create a temporary file with the given content, which is deleted on
+     * exit.
+     *
+     * @param content
+     * @return
+     * @throws IOException
+     */
+    private static File createFile(byte[] content) throws IOException {
+        File file = File.createTempFile("linearfileparser", null);
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
     @BeforeClass
     public static void setUpClass() throws Exception {
     }
@@ -95,4 +1639,131 @@ public class TestParserTest {
     @AfterMethod
     public void tearDownMethod() throws Exception {
     }
+
+    private static class TestKeyProcessor extends LinearFileParser.KeyProcessor {
+
+        public TestKeyProcessor(String key) {
+            super(key);
+        }
+
+        @Override
+        public void process(String arg, ListIterator<String> it) throws ParseException {
+        }
+    }
+
+    private static class TestFileParser implements BatchParser.FileParser<List<String>> {
+
+        private int parses;
+
+        @Override
+        public List<String> parse(Path file) throws IOException, ParseException {
+            parses++;
+            TestParser4 parser = new TestParser4();
+            parser._parse(file.toFile());
+            return parser.getLog();
+        }
+    }
+
+    private static class LogSerializer implements ParseCache.Serializer<List<String>> {
+
+        @Override
+        public void write(List<String> result, DataOutputStream out) throws IOException {
+            out.writeInt(result.size());
+            for (String s : result) {
+                out.writeUTF(s);
+            }
+        }
+
+        @Override
+        public List<String> read(DataInputStream in) throws IOException {
+            List<String> result = new ArrayList<>();
+            for (int n = in.readInt(); n > 0; n--) {
+                result.add(in.readUTF());
+            }
+            return result;
+        }
+    }
+
+    private static class TestBlockProcessor extends BlockKeyProcessor {
+
+        private final TestParser4 parser;
+
+        public TestBlockProcessor(TestParser4 parser, String key, Terminator terminator) {
+            super(key, terminator);
+            this.parser = parser;
+        }
+
+        public TestBlockProcessor(TestParser4 parser, String key, String endMarker) {
+            super(key, false, endMarker);
+            this.parser = parser;
+        }
+
+        @Override
+        public void process(String arg, int firstLine, List<String> lines, ListIterator<String> it) throws ParseException {
+            parser.record(key + " " + arg + " " + firstLine + " " + lines);
+        }
+    }
+
+    /**
+     * Records the chunks of key "batch" in chunks of two arguments and fails
+     * for the argument "fail".
+     */
+    private static class TestBatchProcessor extends BatchKeyProcessor {
+
+        private final TestParser4 parser;
+
+        public TestBatchProcessor(TestParser4 parser) {
+            super("batch", 2);
+            this.parser = parser;
+        }
+
+        @Override
+        public void process(String[] args, int[] lines, int count, ListIterator<String> it) throws ParseException {
+            for (int i = 0; i < count; i++) {
+                if ("fail".equals(args[i])) {
+                    throw new IllegalLineException(lines[i]);
+                }
+            }
+            parser.record("batch " + Arrays.toString(Arrays.copyOf(args, count)) + " " + Arrays.toString(Arrays.copyOf(lines, count)));
+        }
+    }
+
+    /**
+     * Emits the arguments of key "emit" into a channel.
+     */
+    private static class EmittingParser extends TestParser4 {
+
+        public EmittingParser(final RecordChannel<Integer> channel) {
+            addKeyProcessor(new IntKeyProcessor("emit") {
+                @Override
+                public void process(int value, ListIterator<String> it) throws ParseException {
+                    channel.emit(value);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stores the log in checkpoints.
+     */
+    private static class CheckpointParser extends TestParser4 {
+
+        @Override
+        protected byte[] getCheckpointState() {
+            StringBuilder sb = new StringBuilder();
+            for (String entry : getLog()) {
+                sb.append(entry).append('\n');
+            }
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected void restoreCheckpointState(byte[] state) {
+            getLog().clear();
+            String log = new String(state, StandardCharsets.UTF_8);
+            if (!log.isEmpty()) {
+                getLog().addAll(Arrays.asList(log.substring(0, log.length() - 1).split("\n")));
+            }
+        }
+    }
 }